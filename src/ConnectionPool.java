@@ -0,0 +1,144 @@
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps idle HTTP/1.1 connections around per server, so consecutive requests
+ * to the same host skip the TCP handshake, and the TLS handshake for https.
+ * Connections that have been idle for longer than the timeout are closed
+ * instead of reused, as the server has likely given up on them.
+ */
+public class ConnectionPool {
+
+	private final HashMap<String, ArrayDeque<HttpConnection>> idle;
+	private final int perHost;
+	private final long timeout;
+
+	/**
+	 * Initializes an empty pool
+	 *
+	 * @param perHost - the most idle connections kept for a single server
+	 * @param timeout - how long a connection may stay idle, in seconds
+	 */
+	public ConnectionPool(int perHost, long timeout)
+	{
+		this.idle = new HashMap<>();
+		this.perHost = perHost;
+		this.timeout = TimeUnit.SECONDS.toNanos(timeout);
+	}
+
+	/**
+	 * Returns an idle connection to the given server, or opens a new one if
+	 * there is none. The most recently used connection is handed out first, as
+	 * it is the least likely to have been closed by the server.
+	 *
+	 * @param host - the host to connect to
+	 * @param port - the port to connect to
+	 * @param https - whether to use TLS
+	 * @return - the connection
+	 * @throws IOException
+	 */
+	public HttpConnection acquire(String host, int port, boolean https) throws IOException
+	{
+		String key = HttpConnection.key(host, port, https);
+
+		synchronized(idle)
+		{
+			ArrayDeque<HttpConnection> connections = idle.get(key);
+			HttpConnection connection;
+
+			while(connections != null && (connection = connections.pollLast()) != null)
+			{
+				if(!isExpired(connection) && connection.isOpen())
+				{
+					return connection;
+				}
+
+				connection.close();
+			}
+		}
+
+		return new HttpConnection(host, port, https);
+	}
+
+	/**
+	 * Puts a connection whose response was read completely back into the pool
+	 *
+	 * @param connection - the connection
+	 */
+	public void release(HttpConnection connection)
+	{
+		connection.idle();
+
+		synchronized(idle)
+		{
+			evictExpired();
+			ArrayDeque<HttpConnection> connections = idle.computeIfAbsent(connection.getKey(), key -> new ArrayDeque<>());
+
+			if(connections.size() < perHost)
+			{
+				connections.addLast(connection);
+				return;
+			}
+		}
+
+		connection.close();
+	}
+
+	/**
+	 * Closes every idle connection
+	 */
+	public void clear()
+	{
+		synchronized(idle)
+		{
+			for(ArrayDeque<HttpConnection> connections : idle.values())
+			{
+				for(HttpConnection connection : connections)
+				{
+					connection.close();
+				}
+			}
+
+			idle.clear();
+		}
+	}
+
+	/**
+	 * Closes the connections that have been idle for too long. The oldest
+	 * connections are at the front of every queue.
+	 */
+	private void evictExpired()
+	{
+		Iterator<Map.Entry<String, ArrayDeque<HttpConnection>>> entries = idle.entrySet().iterator();
+
+		while(entries.hasNext())
+		{
+			ArrayDeque<HttpConnection> connections = entries.next().getValue();
+
+			while(!connections.isEmpty() && isExpired(connections.peekFirst()))
+			{
+				connections.pollFirst().close();
+			}
+
+			if(connections.isEmpty())
+			{
+				entries.remove();
+			}
+		}
+	}
+
+	/**
+	 * Checks whether a connection has been idle for longer than the timeout
+	 *
+	 * @param connection - the connection
+	 * @return - true if the connection should not be reused
+	 */
+	private boolean isExpired(HttpConnection connection)
+	{
+		return System.nanoTime() - connection.getLastUsed() > timeout;
+	}
+}
@@ -0,0 +1,65 @@
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Adds the number of bytes read through a stream to a counter shared with
+ * other streams, such as every response fetched by the crawler
+ */
+public class CountingInputStream extends FilterInputStream {
+
+	private final LongAdder counter;
+
+	/**
+	 * Initializes a counting stream
+	 *
+	 * @param input - the stream to read from
+	 * @param counter - the counter to add the bytes read to
+	 */
+	public CountingInputStream(InputStream input, LongAdder counter)
+	{
+		super(input);
+		this.counter = counter;
+	}
+
+	@Override
+	public int read() throws IOException
+	{
+		int b = super.read();
+
+		if(b != -1)
+		{
+			counter.increment();
+		}
+
+		return b;
+	}
+
+	@Override
+	public int read(byte[] buffer, int offset, int length) throws IOException
+	{
+		int read = super.read(buffer, offset, length);
+
+		if(read > 0)
+		{
+			counter.add(read);
+		}
+
+		return read;
+	}
+
+	@Override
+	public long skip(long n) throws IOException
+	{
+		long skipped = super.skip(n);
+		counter.add(skipped);
+		return skipped;
+	}
+
+	@Override
+	public boolean markSupported()
+	{
+		return false;
+	}
+}
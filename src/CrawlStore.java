@@ -0,0 +1,639 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+/**
+ * Keeps the state of a crawl on disk, so a crawl that is stopped can continue
+ * from its last checkpoint instead of starting over, and the pages it has seen
+ * do not have to fit in the heap. A store is a directory of files:
+ *
+ * <pre>
+ * frontier.log   every page scheduled, in order: length, UTF-8 URL
+ * done.log       the fingerprint of every page that has been indexed
+ * visited.table  an open addressing hash table of page fingerprints, with the
+ *                lowest bit set once the page has been indexed
+ * index-N.segment the pages indexed between checkpoints N-1 and N
+ * checkpoint     magic, version, checkpoint number, and the length of each
+ *                log as of that checkpoint
+ * </pre>
+ *
+ * Both logs are append-only and memory-mapped. The table is rebuilt from the
+ * logs whenever a store is opened, and anything written to the logs after the
+ * last checkpoint is ignored when a crawl is resumed, as the segments written
+ * up to that checkpoint do not include it. Each checkpoint only writes the
+ * pages indexed since the one before, so the cost of checkpointing grows with
+ * the crawl rather than with the square of it, and resuming loads every
+ * segment in turn. The pages waiting to be fetched are only read from the
+ * frontier log when a crawl is resumed, and are otherwise kept in memory by
+ * the crawler like any other page. Pages are told apart by a 64-bit
+ * fingerprint of their URL, so two pages are taken for one only if their
+ * fingerprints collide. Every file is limited to 2GB, the most a single
+ * buffer can map.
+ */
+public class CrawlStore implements Closeable {
+
+	/** The first four bytes of every checkpoint file. */
+	public static final int MAGIC = 0x43524157;
+
+	/** The version of the format written by this class. */
+	public static final int VERSION = 2;
+
+	/** The size a log or table file starts out mapped at */
+	private static final int INITIAL_SIZE = 1 << 16;
+
+	/** The lowest bit of a table entry, set once its page has been indexed */
+	private static final long DONE = 1;
+
+	private final Path directory;
+	private final MappedFile frontier;
+	private final MappedFile done;
+	private MappedFile table;
+
+	/** The bytes written to the frontier log, and the pages in it */
+	private long frontierLength;
+	private int pages;
+
+	/** The pages indexed, which is also the number of fingerprints in the done log */
+	private int completed;
+
+	/** The number of slots in the table, always a power of two */
+	private int slots;
+
+	/** The last checkpoint written or resumed from, or 0 if there is none */
+	private long generation;
+
+	/** Whether a checkpoint failed, after which a later one would leave out the pages it held */
+	private boolean failed;
+
+	/**
+	 * Opens the files of a store, truncating them unless a crawl is being resumed
+	 *
+	 * @param directory - the directory of the store
+	 * @param truncate - whether to start with empty logs
+	 * @throws IOException if unable to open the files
+	 */
+	private CrawlStore(Path directory, boolean truncate) throws IOException
+	{
+		Files.createDirectories(directory);
+		this.directory = directory;
+		this.frontier = new MappedFile(directory.resolve("frontier.log"), truncate);
+		this.done = new MappedFile(directory.resolve("done.log"), truncate);
+		this.slots = INITIAL_SIZE / Long.BYTES;
+		this.table = new MappedFile(directory.resolve("visited.table"), true);
+		this.frontierLength = 0;
+		this.pages = 0;
+		this.completed = 0;
+		this.generation = 0;
+		this.failed = false;
+	}
+
+	/**
+	 * Creates an empty store for a new crawl, throwing away whatever was in
+	 * the directory before
+	 *
+	 * @param directory - the directory of the store
+	 * @return - the store
+	 * @throws IOException if unable to create the files
+	 */
+	public static CrawlStore create(Path directory) throws IOException
+	{
+		CrawlStore store = new CrawlStore(directory, true);
+		Files.deleteIfExists(directory.resolve("checkpoint"));
+
+		try(DirectoryStream<Path> segments = Files.newDirectoryStream(directory, "index-*.segment"))
+		{
+			for(Path segment : segments)
+			{
+				Files.delete(segment);
+			}
+		}
+
+		return store;
+	}
+
+	/**
+	 * Opens the store of an earlier crawl as of its last checkpoint, and
+	 * rebuilds the table of the pages it had seen
+	 *
+	 * @param directory - the directory of the store
+	 * @return - the store
+	 * @throws IOException if there is no checkpoint to resume from, or unable to read the store
+	 */
+	public static CrawlStore resume(Path directory) throws IOException
+	{
+		ByteBuffer checkpoint;
+
+		try
+		{
+			checkpoint = ByteBuffer.wrap(Files.readAllBytes(directory.resolve("checkpoint")));
+		}
+		catch(NoSuchFileException e)
+		{
+			throw new IOException("No checkpoint to resume from in " + directory);
+		}
+
+		if(checkpoint.capacity() < 32 || checkpoint.getInt(0) != MAGIC)
+		{
+			throw new IOException("Not a crawl checkpoint file");
+		}
+
+		if(checkpoint.getInt(4) != VERSION)
+		{
+			throw new IOException("Unsupported crawl checkpoint version: " + checkpoint.getInt(4));
+		}
+
+		CrawlStore store = new CrawlStore(directory, false);
+
+		try
+		{
+			store.generation = checkpoint.getLong(8);
+			store.frontierLength = checkpoint.getLong(16);
+			store.pages = checkpoint.getInt(24);
+			store.completed = checkpoint.getInt(28);
+			store.rebuild();
+		}
+		catch(IOException | RuntimeException e)
+		{
+			store.close();
+			throw e;
+		}
+
+		return store;
+	}
+
+	/**
+	 * Fills the table from the logs up to the checkpoint
+	 *
+	 * @throws IOException if the logs are shorter than the checkpoint says
+	 */
+	private void rebuild() throws IOException
+	{
+		if(frontier.size() < frontierLength || done.size() < (long) completed * Long.BYTES)
+		{
+			throw new IOException("The crawl logs are shorter than the checkpoint");
+		}
+
+		while(slots / 2 < pages)
+		{
+			slots *= 2;
+		}
+
+		table.ensure((long) slots * Long.BYTES);
+		MappedByteBuffer log = frontier.buffer();
+
+		for(long offset = 0; offset < frontierLength; offset += Integer.BYTES + log.getInt((int) offset))
+		{
+			insert(fingerprint(read(log, offset)));
+		}
+
+		MappedByteBuffer fingerprints = done.buffer();
+
+		for(int i = 0; i < completed; i++)
+		{
+			markDone(fingerprints.getLong(i * Long.BYTES));
+		}
+	}
+
+	/**
+	 * Adds a page to the frontier unless it has been seen before
+	 *
+	 * @param url - the page
+	 * @return - true if the page is new
+	 * @throws IOException if the frontier log or the table cannot grow
+	 */
+	public synchronized boolean add(String url) throws IOException
+	{
+		long fingerprint = fingerprint(url);
+
+		if(slot(fingerprint) >= 0)
+		{
+			return false;
+		}
+
+		byte[] bytes = url.getBytes(StandardCharsets.UTF_8);
+		MappedByteBuffer log = frontier.ensure(frontierLength + Integer.BYTES + bytes.length);
+		log.putInt((int) frontierLength, bytes.length);
+		log.position((int) frontierLength + Integer.BYTES);
+		log.put(bytes);
+		frontierLength += Integer.BYTES + bytes.length;
+		pages++;
+
+		if(pages > slots / 2)
+		{
+			grow();
+		}
+
+		insert(fingerprint);
+		return true;
+	}
+
+	/**
+	 * Records that a page has been indexed
+	 *
+	 * @param url - the page
+	 * @return - the number of pages indexed so far
+	 * @throws IOException if the done log cannot grow
+	 */
+	public synchronized int done(String url) throws IOException
+	{
+		long fingerprint = fingerprint(url);
+		MappedByteBuffer log = done.ensure((long) (completed + 1) * Long.BYTES);
+		log.putLong(completed * Long.BYTES, fingerprint);
+		completed++;
+		markDone(fingerprint);
+		return completed;
+	}
+
+	/**
+	 * @return - the number of pages in the frontier, indexed or not
+	 */
+	public synchronized int size()
+	{
+		return pages;
+	}
+
+	/**
+	 * @return - whether the store was resumed from a checkpoint
+	 */
+	public synchronized boolean isResumed()
+	{
+		return generation > 0;
+	}
+
+	/**
+	 * Passes every page in the frontier that has not been indexed to the
+	 * consumer, in the order they were added
+	 *
+	 * @param consumer - the consumer of the pages
+	 */
+	public synchronized void forEachPending(Consumer<String> consumer)
+	{
+		MappedByteBuffer log = frontier.buffer();
+
+		for(long offset = 0; offset < frontierLength; offset += Integer.BYTES + log.getInt((int) offset))
+		{
+			String url = read(log, offset);
+
+			if((table.buffer().getLong(slot(fingerprint(url)) * Long.BYTES) & DONE) == 0)
+			{
+				consumer.accept(url);
+			}
+		}
+	}
+
+	/**
+	 * Adds the segments written with every checkpoint up to the one the store
+	 * was resumed from
+	 *
+	 * @param index - the index to add to
+	 * @throws IOException if a segment cannot be read or is not valid
+	 */
+	public void restore(InvertedIndex index) throws IOException
+	{
+		for(long checkpoint = 1; checkpoint <= generation; checkpoint++)
+		{
+			IndexSegment.load(segment(checkpoint), index);
+		}
+	}
+
+	/**
+	 * Writes a checkpoint: a segment of the pages indexed since the last one,
+	 * then the lengths of the logs. The caller must make sure no page is
+	 * indexed or marked done until this returns, while pages may still be
+	 * added to the frontier. Writing a new checkpoint only replaces the last
+	 * one once it is complete, and no segment of an earlier one is removed.
+	 * Once a checkpoint has failed, no later one is written, so resuming
+	 * starts from the last one that holds every page it counts as done.
+	 *
+	 * @param recent - the index built from the pages marked done since the last checkpoint
+	 * @throws IOException if unable to write the checkpoint, or an earlier one failed
+	 */
+	public void checkpoint(InvertedIndex recent) throws IOException
+	{
+		long next;
+		long length;
+		int count;
+		int indexed;
+
+		synchronized(this)
+		{
+			if(failed)
+			{
+				throw new IOException("An earlier checkpoint failed, so the crawl can only resume from checkpoint " + generation);
+			}
+
+			// cleared once the checkpoint has been written
+			failed = true;
+			next = generation + 1;
+			length = frontierLength;
+			count = pages;
+			indexed = completed;
+			frontier.force();
+			done.force();
+		}
+
+		// the segment is forced to disk before it is moved into place
+		recent.toSegment(segment(next));
+
+		ByteBuffer checkpoint = ByteBuffer.allocate(32);
+		checkpoint.putInt(MAGIC).putInt(VERSION).putLong(next).putLong(length).putInt(count).putInt(indexed);
+		checkpoint.flip();
+		Path temporary = directory.resolve("checkpoint.tmp");
+
+		try(FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+		{
+			while(checkpoint.hasRemaining())
+			{
+				channel.write(checkpoint);
+			}
+
+			// on disk before it replaces the last checkpoint, or a crash could leave an empty one
+			channel.force(true);
+		}
+
+		Files.move(temporary, directory.resolve("checkpoint"), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		forceDirectory();
+
+		synchronized(this)
+		{
+			generation = next;
+			failed = false;
+		}
+	}
+
+	@Override
+	public synchronized void close() throws IOException
+	{
+		try
+		{
+			frontier.close();
+			done.close();
+		}
+		finally
+		{
+			table.close();
+		}
+	}
+
+	/**
+	 * Forces the entries of the directory to disk, so the segment and the
+	 * checkpoint moved into it survive a crash. Not every platform can open a
+	 * directory, in which case the moves are left to the file system.
+	 */
+	private void forceDirectory()
+	{
+		try(FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ))
+		{
+			channel.force(true);
+		}
+		catch(IOException e)
+		{
+			// the directory cannot be opened here, as on Windows
+		}
+	}
+
+		/**
+	 * @param generation - the number of a checkpoint
+	 * @return - the path of the index segment written with it
+	 */
+	private Path segment(long generation)
+	{
+		return directory.resolve("index-" + generation + ".segment");
+	}
+
+	/**
+	 * Finds the slot of a page in the table
+	 *
+	 * @param fingerprint - the fingerprint of the page
+	 * @return - the slot, or -1 if the page is not in the table
+	 */
+	private int slot(long fingerprint)
+	{
+		MappedByteBuffer buffer = table.buffer();
+
+		for(int slot = (int) (fingerprint >>> 1) & (slots - 1); ; slot = (slot + 1) & (slots - 1))
+		{
+			long entry = buffer.getLong(slot * Long.BYTES);
+
+			if(entry == 0)
+			{
+				return -1;
+			}
+
+			if((entry & ~DONE) == fingerprint)
+			{
+				return slot;
+			}
+		}
+	}
+
+	/**
+	 * Puts a page in the first free slot of the table
+	 *
+	 * @param fingerprint - the fingerprint of the page, which is not in the table yet
+	 */
+	private void insert(long fingerprint)
+	{
+		MappedByteBuffer buffer = table.buffer();
+		int slot = (int) (fingerprint >>> 1) & (slots - 1);
+
+		while(buffer.getLong(slot * Long.BYTES) != 0)
+		{
+			slot = (slot + 1) & (slots - 1);
+		}
+
+		buffer.putLong(slot * Long.BYTES, fingerprint);
+	}
+
+	/**
+	 * Sets the done bit of a page in the table
+	 *
+	 * @param fingerprint - the fingerprint of the page
+	 */
+	private void markDone(long fingerprint)
+	{
+		int slot = slot(fingerprint);
+
+		if(slot >= 0)
+		{
+			MappedByteBuffer buffer = table.buffer();
+			buffer.putLong(slot * Long.BYTES, buffer.getLong(slot * Long.BYTES) | DONE);
+		}
+	}
+
+	/**
+	 * Doubles the table, moving every entry to a new file that then replaces the old one
+	 *
+	 * @throws IOException if the table is too large to map
+	 */
+	private void grow() throws IOException
+	{
+		MappedFile old = table;
+		int oldSlots = slots;
+		Path path = directory.resolve("visited.table");
+		Path temporary = directory.resolve("visited.table.tmp");
+
+		slots = oldSlots * 2;
+		table = new MappedFile(temporary, true);
+		table.ensure((long) slots * Long.BYTES);
+
+		MappedByteBuffer entries = old.buffer();
+
+		for(int slot = 0; slot < oldSlots; slot++)
+		{
+			long entry = entries.getLong(slot * Long.BYTES);
+
+			if(entry != 0)
+			{
+				insert(entry & ~DONE);
+
+				if((entry & DONE) != 0)
+				{
+					markDone(entry & ~DONE);
+				}
+			}
+		}
+
+		old.close();
+		Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Reads a URL from the frontier log
+	 *
+	 * @param log - the mapped log
+	 * @param offset - the offset of the record
+	 * @return - the URL
+	 */
+	private static String read(MappedByteBuffer log, long offset)
+	{
+		byte[] bytes = new byte[log.getInt((int) offset)];
+		ByteBuffer record = log.duplicate();
+		record.position((int) offset + Integer.BYTES);
+		record.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Hashes a URL with 64-bit FNV-1a followed by a finalizer that spreads its
+	 * bits, leaving the lowest bit clear for the done flag
+	 *
+	 * @param url - the URL
+	 * @return - a fingerprint that is never 0
+	 */
+	private static long fingerprint(String url)
+	{
+		long hash = 0xcbf29ce484222325L;
+
+		for(int i = 0; i < url.length(); i++)
+		{
+			hash ^= url.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+
+		hash &= ~DONE;
+		return hash == 0 ? 2 : hash;
+	}
+
+	/**
+	 * A file mapped read-write into memory, which is remapped at twice the
+	 * size whenever it has to grow
+	 */
+	private static class MappedFile implements Closeable
+	{
+		private final FileChannel channel;
+		private MappedByteBuffer buffer;
+
+		/**
+		 * Opens and maps a file
+		 *
+		 * @param path - the file
+		 * @param truncate - whether to empty the file first
+		 * @throws IOException if unable to open or map the file
+		 */
+		public MappedFile(Path path, boolean truncate) throws IOException
+		{
+			this.channel = truncate ?
+					FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING) :
+					FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+			if(channel.size() > Integer.MAX_VALUE)
+			{
+				channel.close();
+				throw new IOException("Crawl file is too large to map: " + path);
+			}
+
+			this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(channel.size(), INITIAL_SIZE));
+		}
+
+		/**
+		 * @return - the current mapping, which is replaced when the file grows
+		 */
+		public MappedByteBuffer buffer()
+		{
+			return buffer;
+		}
+
+		/**
+		 * @return - the size of the file
+		 * @throws IOException if unable to read the size
+		 */
+		public long size() throws IOException
+		{
+			return channel.size();
+		}
+
+		/**
+		 * Makes sure the mapping covers the given number of bytes
+		 *
+		 * @param capacity - the bytes needed
+		 * @return - the mapping
+		 * @throws IOException if the file would grow past what a buffer can map
+		 */
+		public MappedByteBuffer ensure(long capacity) throws IOException
+		{
+			if(capacity > buffer.capacity())
+			{
+				if(capacity > Integer.MAX_VALUE)
+				{
+					throw new IOException("Crawl file is too large to map");
+				}
+
+				// the new mapping shares its pages with the old one
+				buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.min(Integer.MAX_VALUE, Math.max(capacity, 2L * buffer.capacity())));
+			}
+
+			return buffer;
+		}
+
+		/**
+		 * Writes the changes made through the mapping out to the disk
+		 */
+		public void force()
+		{
+			buffer.force();
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			channel.close();
+		}
+	}
+}
@@ -0,0 +1,125 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.TreeMap;
+
+/**
+ * A table that maps every document (file path or URL) in an inverted index to
+ * a dense integer ID, and keeps the total word count of each document under
+ * that ID.
+ */
+public class DocumentTable {
+
+	private final HashMap<String, Integer> ids;
+	private final ArrayList<String> paths;
+	private int[] counts;
+
+	/**
+	 * Initializes an empty document table
+	 */
+	public DocumentTable()
+	{
+		this.ids = new HashMap<>();
+		this.paths = new ArrayList<>();
+		this.counts = new int[16];
+	}
+
+	/**
+	 * Returns the ID of the given document, assigning the next free ID if the
+	 * document has not been seen before
+	 *
+	 * @param path - the path or URL of the document
+	 * @return - the ID of the document
+	 */
+	public int add(String path)
+	{
+		Integer id = ids.get(path);
+
+		if(id == null)
+		{
+			id = paths.size();
+			ids.put(path, id);
+			paths.add(path);
+
+			if(id == counts.length)
+			{
+				counts = Arrays.copyOf(counts, id * 2);
+			}
+		}
+
+		return id;
+	}
+
+	/**
+	 * Returns the ID of the given document
+	 *
+	 * @param path - the path or URL of the document
+	 * @return - the ID of the document, or -1 if it is not in the table
+	 */
+	public int lookup(String path)
+	{
+		Integer id = ids.get(path);
+		return id == null ? -1 : id;
+	}
+
+	/**
+	 * Returns the path or URL stored under the given ID
+	 *
+	 * @param id - the ID of the document
+	 * @return - the path or URL of the document
+	 */
+	public String path(int id)
+	{
+		return paths.get(id);
+	}
+
+	/**
+	 * Returns the total number of words stored for the given document
+	 *
+	 * @param id - the ID of the document
+	 * @return - the word count of the document
+	 */
+	public int count(int id)
+	{
+		return counts[id];
+	}
+
+	/**
+	 * Adds to the word count of the given document
+	 *
+	 * @param id - the ID of the document
+	 * @param amount - the number of words to add
+	 */
+	public void increment(int id, int amount)
+	{
+		counts[id] += amount;
+	}
+
+	/**
+	 * Returns the number of documents in the table
+	 *
+	 * @return - the number of documents
+	 */
+	public int size()
+	{
+		return paths.size();
+	}
+
+	/**
+	 * Builds a sorted map from every path to its word count. Only used when the
+	 * table has to be written out, since it turns every ID back into a string.
+	 *
+	 * @return - a sorted map of paths to word counts
+	 */
+	public TreeMap<String, Integer> toMap()
+	{
+		TreeMap<String, Integer> map = new TreeMap<>();
+
+		for(int id = 0; id < paths.size(); id++)
+		{
+			map.put(paths.get(id), counts[id]);
+		}
+
+		return map;
+	}
+}
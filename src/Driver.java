@@ -24,7 +24,8 @@ public class Driver {
 		InvertedIndex invertedIndex = null;
 		QueryParserHelper queryParserHelper = null;
 		ThreadSafeInvertedIndex threadSafeInvertedIndex = null;
-		int threads, limit, port;
+		int threads, limit, port, shards, connections, perHost;
+		long delay;
 		
 		map.parse(args);
 		
@@ -67,10 +68,81 @@ public class Driver {
 			limit = 50;
 		}
 		
-		if(map.hasFlag("-threads"))
+		try
+		{
+			shards = Integer.parseInt(map.getString("-shards"));
+			if(shards <= 0)
+			{
+				shards = 16;
+			}
+		}
+		catch(NumberFormatException e)
+		{
+			shards = 16;
+		}
+		
+		try
+		{
+			connections = Integer.parseInt(map.getString("-connections"));
+			if(connections <= 0)
+			{
+				connections = 64;
+			}
+		}
+		catch(NumberFormatException e)
+		{
+			connections = 64;
+		}
+		
+		try
+		{
+			perHost = Integer.parseInt(map.getString("-perhost"));
+			if(perHost <= 0)
+			{
+				perHost = HostScheduler.DEFAULT_LIMIT;
+			}
+		}
+		catch(NumberFormatException e)
+		{
+			perHost = HostScheduler.DEFAULT_LIMIT;
+		}
+		
+		try
+		{
+			delay = Long.parseLong(map.getString("-delay"));
+			if(delay < 0)
+			{
+				delay = 0;
+			}
+		}
+		catch(NumberFormatException e)
+		{
+			delay = 0;
+		}
+		
+		if(map.hasFlag("-load"))
+		{
+			threadSafeInvertedIndex = createIndex(map, shards);
+			invertedIndex = threadSafeInvertedIndex;
+			queryParserHelper = map.hasFlag("-threads") ? 
+					new ThreadedQueryFileParser(threadSafeInvertedIndex, threads) : new QueryFileParser(invertedIndex);
+			
+			Path loadPath = map.getPath("-load", Paths.get("index.segment"));
+			
+			try
+			{
+				IndexSegment.load(loadPath, threadSafeInvertedIndex);
+			}
+			catch(IOException e)
+			{
+				System.err.println("Unable to load the index from path: " + loadPath.toString());
+			}
+		}
+		
+		else if(map.hasFlag("-threads"))
 		{
 			
-			threadSafeInvertedIndex = new ThreadSafeInvertedIndex();
+			threadSafeInvertedIndex = createIndex(map, shards);
 			invertedIndex = threadSafeInvertedIndex;
 			queryParserHelper = new ThreadedQueryFileParser(threadSafeInvertedIndex, threads);
 			
@@ -78,7 +150,14 @@ public class Driver {
 			{
 				try
 				{
-					ThreadSafeIndexBuilder.buildHelper(map.getPath("-path"), threadSafeInvertedIndex, threads);
+					if(map.hasFlag("-reduce"))
+					{
+						ThreadSafeIndexBuilder.reduceHelper(map.getPath("-path"), threadSafeInvertedIndex, threads);
+					}
+					else
+					{
+						ThreadSafeIndexBuilder.buildHelper(map.getPath("-path"), threadSafeInvertedIndex, threads);
+					}
 				}
 				catch(IOException e)
 				{
@@ -114,25 +193,105 @@ public class Driver {
 			}
 		}
 		
-		if(map.hasFlag("-url") && map.getString("-url") != null && !map.getString("-url").contains("\0"))
+		if(!map.hasFlag("-load") && map.hasFlag("-url") && map.getString("-url") != null && !map.getString("-url").contains("\0"))
 		{
-			threadSafeInvertedIndex = new ThreadSafeInvertedIndex();
+			threadSafeInvertedIndex = createIndex(map, shards);
 			invertedIndex = threadSafeInvertedIndex;
-			WebCrawler crawler = new WebCrawler(threadSafeInvertedIndex, threads);
 			queryParserHelper = new QueryFileParser(invertedIndex);
 			
 			try
 			{
+				WebCrawler crawler;
+				
+				// parsing is all that is left to the work queue when fetching apart, so it gets a thread per processor
+				int parsers = Runtime.getRuntime().availableProcessors();
+				
+				if(map.hasFlag("-nio"))
+				{
+					crawler = new WebCrawler(threadSafeInvertedIndex, parsers, new NioFetcher(connections));
+				}
+				else if(map.hasFlag("-virtual"))
+				{
+					crawler = new WebCrawler(threadSafeInvertedIndex, parsers, connections);
+				}
+				else
+				{
+					crawler = new WebCrawler(threadSafeInvertedIndex, threads);
+				}
+				
+				crawler.politeness(perHost, delay);
 				URL urlFlag = new URL(map.getString("-url"));
-				crawler.crawl(urlFlag, limit);
+				
+				if(map.hasFlag("-checkpoint") || map.hasFlag("-resume"))
+				{
+					// a store given to -resume is the one resumed, otherwise it is the one of -checkpoint
+					Path storePath = map.getPath("-resume", map.getPath("-checkpoint", Paths.get("crawl")));
+					
+					try(CrawlStore store = map.hasFlag("-resume") ? CrawlStore.resume(storePath) : CrawlStore.create(storePath))
+					{
+						crawler.crawl(urlFlag, limit, store);
+					}
+					catch(IOException e)
+					{
+						System.err.println("Unable to crawl with the store at path: " + storePath.toString() + " (" + e.getMessage() + ")");
+					}
+				}
+				else
+				{
+					crawler.crawl(urlFlag, limit);
+				}
 			}
 			catch(MalformedURLException e)
 			{
 				System.out.println("unable to read URL");
 			}
+			catch(IOException e)
+			{
+				System.err.println("Unable to start the fetcher: " + e.getMessage());
+			}
 			
 		}
 		
+		if(map.hasFlag("-segment"))
+		{
+			Path segmentPath = map.getPath("-segment", Paths.get("index.segment"));
+			
+			// -segment only maps an existing segment, writing one is left to -save
+			if(map.hasFlag("-path") || map.hasFlag("-url") || map.hasFlag("-load"))
+			{
+				System.err.println("Ignoring -segment, which only opens an existing segment. Use -save to write one to path: " + segmentPath.toString());
+			}
+			
+			else
+			{
+				try
+				{
+					threadSafeInvertedIndex = new MappedInvertedIndex(IndexSegment.open(segmentPath));
+					invertedIndex = threadSafeInvertedIndex;
+					queryParserHelper = map.hasFlag("-threads") ? 
+							new ThreadedQueryFileParser(threadSafeInvertedIndex, threads) : new QueryFileParser(invertedIndex);
+				}
+				catch(IOException e)
+				{
+					System.err.println("Unable to open the index segment at path: " + segmentPath.toString());
+				}
+			}
+		}
+		
+		if(map.hasFlag("-save"))
+		{
+			Path savePath = map.getPath("-save", Paths.get("index.segment"));
+			
+			try
+			{
+				invertedIndex.toSegment(savePath);
+			}
+			catch(IOException e)
+			{
+				System.err.println("Unable to save the index to path: " + savePath.toString());
+			}
+		}
+		
 		if(map.hasFlag("-port"))
 		{
 			Server server = new Server(port);
@@ -148,6 +307,7 @@ public class Driver {
 			handler.addServletWithMapping(new ServletHolder(new CrawlServlet(threadSafeInvertedIndex, limit, threads)), "/crawl");
 			handler.addServletWithMapping(new ServletHolder(new ExactServlet(threadSafeInvertedIndex)), "/exact");
 			handler.addServletWithMapping(new ServletHolder(historyServlet), "/history");
+			handler.addServletWithMapping(StatsServlet.class, "/stats");
 			server.setHandler(handler);
 			server.start();
 			server.join();
@@ -206,5 +366,39 @@ public class Driver {
 				System.err.println("Unable to write to path: " + defaultPath.toString());
 			}
 		}
+		
+		if(map.hasFlag("-stats"))
+		{
+			for(WorkQueueMetrics metrics : WorkQueue.recentMetrics())
+			{
+				System.out.println(metrics);
+			}
+			
+			System.out.printf("fetched: %d bytes received, %d bytes decoded%n", HttpsFetcher.receivedBytes(), HttpsFetcher.decodedBytes());
+		}
+	}
+	
+	/**
+	 * Creates the thread safe index chosen on the command line: a snapshot
+	 * index for -snapshot, a sharded index for -shards, and a plain thread
+	 * safe index otherwise
+	 * 
+	 * @param map - the parsed command-line arguments
+	 * @param shards - the number of shards to use with -shards
+	 * @return - the new, empty index
+	 */
+	private static ThreadSafeInvertedIndex createIndex(ArgumentMap map, int shards)
+	{
+		if(map.hasFlag("-snapshot"))
+		{
+			return new SnapshotInvertedIndex();
+		}
+		
+		if(map.hasFlag("-shards"))
+		{
+			return new ShardedInvertedIndex(shards);
+		}
+		
+		return new ThreadSafeInvertedIndex();
 	}
-}
\ No newline at end of file
+}
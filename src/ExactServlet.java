@@ -184,7 +184,8 @@ public class ExactServlet extends HttpServlet
 			}
 			
 			final long startTime = System.currentTimeMillis();
-			ArrayList<Result> resultList = index.exactSearch(searchWords);
+			SearchResults results = index.search(searchWords, true, SearchServlet.RESULTS_SHOWN);
+			ArrayList<Result> resultList = results.getResults();
 			
 			if(resultList.isEmpty())
 			{
@@ -204,7 +205,7 @@ public class ExactServlet extends HttpServlet
 			final long endTime = System.currentTimeMillis();
 			final long total = endTime - startTime;
 			
-			out.printf("<h2>Total number of results: %d found in %ds</h2>%n", resultList.size(), total);
+			out.printf("<h2>Total number of results: %d found in %ds</h2>%n", results.getTotal(), total);
 		
 		
 		out.printf("</div>%n");
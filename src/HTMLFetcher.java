@@ -1,11 +1,34 @@
+import java.io.BufferedInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.net.URL;
 import java.net.URLConnection;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
+/**
+ * Fetches HTML pages. The body of a page is decoded straight from the
+ * connection into a single string, using the charset given by the headers or
+ * by a meta tag near the start of the page, and pages larger than the maximum
+ * body size are cut off there instead of being held in memory whole.
+ */
 public class HTMLFetcher {
 
+	/** The default maximum number of bytes read from the body of a page */
+	public static final long MAX_BODY = 8 * 1024 * 1024;
+
+	/** How far into a page a meta tag giving its charset is looked for */
+	private static final int SNIFF = 1024;
+
+	/** Matches both meta charset="..." and the content="...; charset=..." of http-equiv */
+	private static final Pattern META_CHARSET = Pattern.compile("(?i)<meta[^>]*?charset\\s*=\\s*[\"']?([\\w.:-]+)");
+
 	/**
 	 * Given a map of headers (as returned either by
 	 * {@link URLConnection#getHeaderFields()} or by
@@ -101,21 +124,163 @@ public class HTMLFetcher {
 	 * @see #isRedirect(Map)
 	 */
 	public static String fetchHTML(URL url, int redirects) throws IOException {
+		return fetchHTML(url, redirects, MAX_BODY);
+	}
+
+	/**
+	 * Works like {@link #fetchHTML(URL, int)}, but reads at most the given
+	 * number of bytes of the body, leaving out the rest of larger pages.
+	 *
+	 * @param url       the url to fetch and return as html
+	 * @param redirects the number of times to follow a redirect response
+	 * @param maxBytes  the maximum number of bytes read from the body
+	 * @return the html as a single String if the response code was ok, otherwise
+	 *         null
+	 * @throws IOException
+	 */
+	public static String fetchHTML(URL url, int redirects, long maxBytes) throws IOException {
 
-		Map<String, List<String>> response = HttpsFetcher.fetchURL(url);
+		String location = null;
 
-		if (isRedirect(response) && redirects > 0) 
+		try (HttpResponse response = HttpsFetcher.open(url))
 		{
-			return fetchHTML(response.get("Location").get(0), --redirects);
-		} 
+			Map<String, List<String>> headers = response.getHeaders();
+
+			if (isRedirect(headers) && redirects > 0) 
+			{
+				// the redirect is followed once this response has been closed
+				location = headers.get("Location").get(0);
+			} 
+			
+			else if (isHTML(headers) && response.getStatusCode() == 200) 
+			{
+				return readHTML(response, maxBytes);
+			}
+		}
 		
-		else if (isHTML(response) && getStatusCode(response) == 200) 
+		return location == null ? null : fetchHTML(new URL(location), --redirects, maxBytes);
+	}
+
+	/**
+	 * Returns the HTML of a response that has already been fetched, if the
+	 * response was ok and holds HTML.
+	 *
+	 * @param response the response, which is closed afterwards
+	 * @param maxBytes the maximum number of bytes read from the body
+	 * @return the html as a single String if the response code was ok, otherwise
+	 *         null
+	 * @throws IOException
+	 */
+	public static String toHTML(HttpResponse response, long maxBytes) throws IOException {
+
+		try (response)
 		{
-			return String.join(System.lineSeparator(), response.get("Content"));
+			if (isHTML(response.getHeaders()) && response.getStatusCode() == 200)
+			{
+				return readHTML(response, maxBytes);
+			}
 		}
-		
+
 		return null;
+	}
 
+	/**
+	 * Decodes the body of a page into a string, normalizing line endings to
+	 * the line separator of the platform as reading the page line by line
+	 * would.
+	 *
+	 * @param response the response holding the page
+	 * @param maxBytes the maximum number of bytes read from the body
+	 * @return the html of the page
+	 * @throws IOException
+	 */
+	private static String readHTML(HttpResponse response, long maxBytes) throws IOException {
+
+		InputStream body = new BufferedInputStream(response.getBody());
+		Charset charset = response.getCharset();
+
+		if (charset == null)
+		{
+			charset = sniffCharset(body);
+		}
+
+		Reader reader = new InputStreamReader(new LimitedInputStream(body, maxBytes), charset);
+		StringBuilder html = new StringBuilder();
+		String separator = System.lineSeparator();
+		char[] buffer = new char[8192];
+		boolean carriageReturn = false;
+		int read;
+
+		while ((read = reader.read(buffer)) != -1)
+		{
+			for (int i = 0; i < read; i++)
+			{
+				char c = buffer[i];
+
+				if (c == '\n' && carriageReturn)
+				{
+					carriageReturn = false;
+				}
+				else if (c == '\n' || c == '\r')
+				{
+					html.append(separator);
+					carriageReturn = c == '\r';
+				}
+				else
+				{
+					html.append(c);
+					carriageReturn = false;
+				}
+			}
+		}
+
+		// joining the lines of the page left out the last line ending
+		if (html.length() >= separator.length() && html.lastIndexOf(separator) == html.length() - separator.length())
+		{
+			html.setLength(html.length() - separator.length());
+		}
+
+		return html.toString();
+	}
+
+	/**
+	 * Looks for a meta tag giving the charset near the start of a page,
+	 * without consuming any of it.
+	 *
+	 * @param body the body of the page, which must support mark and reset
+	 * @return the charset, or UTF-8 if none is given
+	 * @throws IOException
+	 */
+	private static Charset sniffCharset(InputStream body) throws IOException {
+
+		body.mark(SNIFF);
+		byte[] start = body.readNBytes(SNIFF);
+		body.reset();
+
+		Matcher matcher = META_CHARSET.matcher(new String(start, StandardCharsets.ISO_8859_1));
+		Charset charset = matcher.find() ? charset(matcher.group(1)) : null;
+
+		return charset == null ? StandardCharsets.UTF_8 : charset;
+	}
+
+	/**
+	 * Looks up a charset by name.
+	 *
+	 * @param name the name of the charset, possibly quoted
+	 * @return the charset, or null if the name is not valid or not supported
+	 */
+	public static Charset charset(String name) {
+
+		name = name.trim().replaceAll("^[\"']|[\"']$", "");
+
+		try
+		{
+			return Charset.isSupported(name) ? Charset.forName(name) : null;
+		}
+		catch (IllegalArgumentException e)
+		{
+			return null;
+		}
 	}
 
 	/**
@@ -0,0 +1,398 @@
+import java.net.URL;
+import java.util.ArrayList;
+
+/**
+ * Pulls the visible text out of HTML in a single linear pass and feeds it
+ * straight to a {@link Tokenizer}, instead of rewriting the whole document
+ * once per kind of markup as {@link HTMLCleaner#stripHTML(String)} does. The
+ * same pass can collect the links of the anchor tags it skips, resolved and
+ * cleaned by {@link LinkParser#resolve(URL, String)}.
+ *
+ * <p>The text seen by the tokenizer is the same as the text left by
+ * {@link HTMLCleaner}: comments and the head, style and script elements end the
+ * current word, other tags and entities are dropped without ending it, and a
+ * '&lt;' with no closing '&gt;' is left as text.
+ */
+public class HTMLScanner {
+
+	/** Elements whose content is never visible text */
+	private static final String[] SKIPPED = { "head", "style", "script" };
+
+	private final String html;
+	private final Tokenizer tokenizer;
+	private final URL base;
+	private final ArrayList<URL> links;
+	private final int limit;
+
+	// once a search reaches the end of the page without a match, later searches will not match either
+	private boolean noTagEnd;
+	private boolean noCommentEnd;
+	private final boolean[] noElementEnd;
+
+	/**
+	 * Initializes a scanner over a page
+	 *
+	 * @param base - the URL of the page, or null to skip collecting links
+	 * @param html - the page to scan
+	 * @param tokenizer - the tokenizer to feed the visible text to
+	 * @param limit - the maximum number of links to collect
+	 */
+	private HTMLScanner(URL base, String html, Tokenizer tokenizer, int limit)
+	{
+		this.html = html;
+		this.tokenizer = tokenizer;
+		this.base = base;
+		this.links = new ArrayList<>();
+		this.limit = base == null ? 0 : limit;
+		this.noTagEnd = false;
+		this.noCommentEnd = false;
+		this.noElementEnd = new boolean[SKIPPED.length];
+	}
+
+	/**
+	 * Feeds the visible text of a page to a tokenizer. The last word is not
+	 * finished, so the caller should call {@link Tokenizer#finish()}.
+	 *
+	 * @param html - the page to scan
+	 * @param tokenizer - the tokenizer to feed the visible text to
+	 */
+	public static void extractText(String html, Tokenizer tokenizer)
+	{
+		new HTMLScanner(null, html, tokenizer, 0).scan();
+	}
+
+	/**
+	 * Feeds the visible text of a page to a tokenizer and collects the http(s)
+	 * links of its anchor tags in the same pass. Anchors inside comments and
+	 * skipped elements are ignored. The last word is not finished, so the
+	 * caller should call {@link Tokenizer#finish()}.
+	 *
+	 * @param base - the URL of the page, used to resolve relative links
+	 * @param html - the page to scan
+	 * @param tokenizer - the tokenizer to feed the visible text to
+	 * @param limit - the maximum number of links to collect
+	 * @return - the cleaned links in the order they were found
+	 */
+	public static ArrayList<URL> extract(URL base, String html, Tokenizer tokenizer, int limit)
+	{
+		HTMLScanner scanner = new HTMLScanner(base, html, tokenizer, limit);
+		scanner.scan();
+		return scanner.links;
+	}
+
+	/**
+	 * Walks through the page once, skipping markup and feeding runs of text
+	 */
+	private void scan()
+	{
+		int length = html.length();
+		int i = 0;
+
+		while(i < length)
+		{
+			char c = html.charAt(i);
+
+			if(c == '<')
+			{
+				int end = skipMarkup(i);
+
+				if(end > i)
+				{
+					i = end;
+					continue;
+				}
+
+				tokenizer.feed(html, i, i + 1);
+				i++;
+			}
+			else if(c == '&')
+			{
+				int end = skipEntity(i);
+
+				if(end < 0)
+				{
+					tokenizer.feed(html, i, i + 1);
+					i++;
+				}
+				else
+				{
+					i = end;
+				}
+			}
+			else
+			{
+				int start = i;
+
+				while(i < length && (c = html.charAt(i)) != '<' && c != '&')
+				{
+					i++;
+				}
+
+				tokenizer.feed(html, start, i);
+			}
+		}
+	}
+
+	/**
+	 * Skips the comment, element or tag starting at the given '&lt;'
+	 *
+	 * @param start - the index of the '&lt;'
+	 * @return - the index just past the markup, or start if it is not markup
+	 */
+	private int skipMarkup(int start)
+	{
+		if(html.startsWith("<!--", start) && !noCommentEnd)
+		{
+			// a comment holds at least one character and ends at the first "->"
+			int end = html.indexOf("->", start + 5);
+
+			if(end >= 0)
+			{
+				tokenizer.separate();
+				return end + 2;
+			}
+
+			noCommentEnd = true;
+		}
+
+		for(int element = 0; element < SKIPPED.length; element++)
+		{
+			if(!noElementEnd[element] && isOpening(start, SKIPPED[element]))
+			{
+				int end = skipElement(start, element);
+
+				if(end >= 0)
+				{
+					tokenizer.separate();
+					return end;
+				}
+			}
+		}
+
+		if(noTagEnd)
+		{
+			return start;
+		}
+
+		int end = html.indexOf('>', start + 1);
+
+		if(end < 0)
+		{
+			noTagEnd = true;
+			return start;
+		}
+
+		if(links.size() < limit && isOpening(start, "a"))
+		{
+			addLink(start + 2, end);
+		}
+
+		return end + 1;
+	}
+
+	/**
+	 * Finds the href attribute of an anchor tag and collects its link
+	 *
+	 * @param start - the index just past the tag name
+	 * @param end - the index of the '&gt;' ending the tag
+	 */
+	private void addLink(int start, int end)
+	{
+		int i = start;
+
+		while(i < end)
+		{
+			while(i < end && (isSpace(html.charAt(i)) || html.charAt(i) == '/'))
+			{
+				i++;
+			}
+
+			int name = i;
+
+			while(i < end && html.charAt(i) != '=' && !isSpace(html.charAt(i)))
+			{
+				i++;
+			}
+
+			boolean href = i - name == 4 && matches(name, "href");
+
+			while(i < end && isSpace(html.charAt(i)))
+			{
+				i++;
+			}
+
+			if(i >= end || html.charAt(i) != '=')
+			{
+				continue;
+			}
+
+			i++;
+
+			while(i < end && isSpace(html.charAt(i)))
+			{
+				i++;
+			}
+
+			int valueStart = i;
+			int valueEnd;
+
+			if(i < end && (html.charAt(i) == '"' || html.charAt(i) == '\''))
+			{
+				valueStart++;
+				valueEnd = html.indexOf(html.charAt(i), valueStart);
+				valueEnd = valueEnd < 0 || valueEnd > end ? end : valueEnd;
+				i = Math.min(end, valueEnd + 1);
+			}
+			else
+			{
+				while(i < end && !isSpace(html.charAt(i)))
+				{
+					i++;
+				}
+
+				valueEnd = i;
+			}
+
+			if(href)
+			{
+				URL link = LinkParser.resolve(base, html.substring(valueStart, valueEnd).trim());
+
+				if(link != null)
+				{
+					links.add(link);
+				}
+
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Finds the end of a skipped element, including its closing tag
+	 *
+	 * @param start - the index of the opening tag
+	 * @param element - the index of the element name in {@link #SKIPPED}
+	 * @return - the index just past the closing tag, or -1 if there is none
+	 */
+	private int skipElement(int start, int element)
+	{
+		String name = SKIPPED[element];
+		int i = html.indexOf('>', start);
+
+		while(i >= 0)
+		{
+			i = html.indexOf("</", i);
+
+			if(i < 0)
+			{
+				break;
+			}
+
+			i += 2;
+
+			if(matches(i, name))
+			{
+				int end = i + name.length();
+
+				while(end < html.length() && isSpace(html.charAt(end)))
+				{
+					end++;
+				}
+
+				if(end < html.length() && html.charAt(end) == '>')
+				{
+					return end + 1;
+				}
+			}
+		}
+
+		noElementEnd[element] = true;
+		return -1;
+	}
+
+	/**
+	 * Finds the end of an entity such as "&amp;amp;" or "&amp;#160;"
+	 *
+	 * @param start - the index of the '&amp;'
+	 * @return - the index just past the ';', or -1 if this is not an entity
+	 */
+	private int skipEntity(int start)
+	{
+		int i = start + 2;
+
+		while(i < html.length() && isWordChar(html.charAt(i)))
+		{
+			i++;
+		}
+
+		if(i == start + 2 || i >= html.length() || html.charAt(i) != ';')
+		{
+			return -1;
+		}
+
+		return i + 1;
+	}
+
+	/**
+	 * Checks whether an opening tag of the given element starts at an index
+	 *
+	 * @param start - the index of the '&lt;'
+	 * @param name - the lowercase name of the element
+	 * @return - true if the tag opens that element
+	 */
+	private boolean isOpening(int start, String name)
+	{
+		int end = start + 1 + name.length();
+
+		if(!matches(start + 1, name) || end >= html.length())
+		{
+			return false;
+		}
+
+		char next = html.charAt(end);
+		return next == '>' || next == '/' || isSpace(next);
+	}
+
+	/**
+	 * Compares part of the page to a lowercase name, ignoring ASCII case
+	 *
+	 * @param start - the index to compare from
+	 * @param name - the lowercase name
+	 * @return - true if the name appears at that index
+	 */
+	private boolean matches(int start, String name)
+	{
+		if(start + name.length() > html.length())
+		{
+			return false;
+		}
+
+		for(int i = 0; i < name.length(); i++)
+		{
+			char c = html.charAt(start + i);
+
+			if(c != name.charAt(i) && c + ('a' - 'A') != name.charAt(i))
+			{
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Checks for the whitespace allowed before the '&gt;' of a closing tag
+	 */
+	private static boolean isSpace(char c)
+	{
+		return c == ' ' || (c >= 0x9 && c <= 0xD);
+	}
+
+	/**
+	 * Checks for the characters allowed in the name of an entity
+	 */
+	private static boolean isWordChar(char c)
+	{
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+	}
+}
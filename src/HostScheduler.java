@@ -0,0 +1,328 @@
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * The crawl frontier, which keeps the pages waiting to be fetched in a queue
+ * per host and only starts a fetch when its host allows it. A host never has
+ * more fetches in flight than its current limit, and consecutive fetches from
+ * the same host start at least the minimum delay apart, so a slow host holds
+ * on to its own share of the crawl instead of every worker.
+ *
+ * The limit of every host starts at half the most the crawl can fetch at
+ * once, capped by the most allowed per host, and adapts with additive
+ * increase and multiplicative decrease: it grows by one for every limit's
+ * worth of fetches that finish in time, and halves when a fetch fails or takes
+ * more than twice as long as the moving average of the fetches from that
+ * host. A host that runs out of pages only gives up its queue, and keeps what
+ * was learned about it for when more of its pages are found. The least
+ * recently used idle hosts are forgotten once more than {@link #MAX_HOSTS}
+ * are known.
+ */
+public class HostScheduler {
+	/** The default cap on the fetches in flight to a single host */
+	public static final int DEFAULT_LIMIT = 8;
+
+	/** The most hosts remembered before the least recently used idle ones are forgotten */
+	public static final int MAX_HOSTS = 10000;
+
+	/** How many times slower than the average fetch a fetch may be before the host is backed off */
+	private static final int SLOWDOWN = 2;
+
+	/** The weight of the latest fetch in the moving average */
+	private static final double SMOOTHING = 0.2;
+
+	/** The least average latency a fetch is compared against, so a few quick fetches do not make every other one slow */
+	private static final long MIN_LATENCY = TimeUnit.MILLISECONDS.toNanos(50);
+
+	private final LinkedHashMap<String, Host> hosts;
+	private final Consumer<URL> starter;
+	private final int maxPerHost;
+	private final int initialLimit;
+	private final long delay;
+	private final ScheduledExecutorService timer;
+
+	/**
+	 * Initializes an empty frontier
+	 * @param maxPerHost - the most fetches in flight to a single host
+	 * @param delay - the minimum time between the starts of two fetches from the same host, in milliseconds
+	 * @param concurrency - the most fetches the crawl runs at once, half of which a new host starts out allowed
+	 * @param starter - starts the fetch of a page once its host allows it, and
+	 * 					reports back with {@link #finished(URL, long, boolean)}
+	 */
+	public HostScheduler(int maxPerHost, long delay, int concurrency, Consumer<URL> starter)
+	{
+		this.hosts = new LinkedHashMap<>(16, 0.75f, true)
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Host> eldest)
+			{
+				return size() > MAX_HOSTS && eldest.getValue().isIdle(System.nanoTime());
+			}
+		};
+		this.starter = starter;
+		this.maxPerHost = Math.max(1, maxPerHost);
+		// starts below the cap so the limit has room to grow while the host keeps up
+		this.initialLimit = Math.max(1, Math.min(this.maxPerHost, concurrency) / 2);
+		this.delay = TimeUnit.MILLISECONDS.toNanos(Math.max(0, delay));
+		this.timer = Executors.newSingleThreadScheduledExecutor(runnable ->
+		{
+			Thread thread = new Thread(runnable, "host-scheduler");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Adds a page to the queue of its host, starting it right away if the host allows it
+	 * @param url - the page to fetch
+	 */
+	public void add(URL url)
+	{
+		add(url, starter);
+	}
+
+	/**
+	 * Adds a page to the queue of its host, to be started by its own starter
+	 * instead of the one of the frontier, as when a redirect is followed
+	 * @param url - the page to fetch
+	 * @param starter - starts the fetch of the page once its host allows it
+	 */
+	public void add(URL url, Consumer<URL> starter)
+	{
+		Host host;
+
+		synchronized(hosts)
+		{
+			host = hosts.computeIfAbsent(key(url), name -> new Host());
+
+			if(host.pending == null)
+			{
+				host.pending = new ArrayDeque<>();
+			}
+
+			host.pending.add(new Waiting(url, starter));
+		}
+
+		dispatch(host);
+	}
+
+	/**
+	 * Reports that the fetch of a page is over, adjusting the limit of its host
+	 * and starting the next pages waiting on it
+	 * @param url - the page that was fetched
+	 * @param nanos - how long the fetch took
+	 * @param success - false if the fetch failed
+	 */
+	public void finished(URL url, long nanos, boolean success)
+	{
+		Host host;
+
+		synchronized(hosts)
+		{
+			host = hosts.get(key(url));
+
+			if(host == null)
+			{
+				return;
+			}
+
+			host.active--;
+			host.adjust(nanos, success);
+		}
+
+		dispatch(host);
+	}
+
+	/**
+	 * Stops the timer that starts fetches held back by the delay. Pages still
+	 * waiting are dropped.
+	 */
+	public void close()
+	{
+		timer.shutdownNow();
+	}
+
+	/**
+	 * Starts as many of the pages waiting on a host as it allows, and arranges
+	 * to try again once the delay has passed if more are held back by it. A
+	 * host left without pages drops its queue.
+	 * @param host - the host
+	 */
+	private void dispatch(Host host)
+	{
+		ArrayDeque<Waiting> ready = new ArrayDeque<>();
+
+		synchronized(hosts)
+		{
+			long now = System.nanoTime();
+
+			if(host.pending == null)
+			{
+				return;
+			}
+
+			while(!host.pending.isEmpty() && host.active < host.allowed() && now - host.nextStart >= 0)
+			{
+				ready.add(host.pending.poll());
+				host.active++;
+				host.nextStart = now + delay;
+			}
+
+			if(host.pending.isEmpty())
+			{
+				host.pending = null;
+			}
+			else if(!host.waiting && host.active < host.allowed())
+			{
+				host.waiting = true;
+				schedule(host, host.nextStart - now);
+			}
+		}
+
+		// started outside the lock, as starting a fetch may resolve the host name
+		for(Waiting page : ready)
+		{
+			page.starter.accept(page.url);
+		}
+	}
+
+	/**
+	 * Dispatches a host again after a wait
+	 * @param host - the host
+	 * @param nanos - how long to wait
+	 */
+	private void schedule(Host host, long nanos)
+	{
+		if(timer.isShutdown())
+		{
+			return;
+		}
+
+		timer.schedule(() ->
+		{
+			synchronized(hosts)
+			{
+				host.waiting = false;
+			}
+
+			dispatch(host);
+		}, nanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * @param url - a page
+	 * @return - the name of the host the page belongs to
+	 */
+	private static String key(URL url)
+	{
+		return url.getHost().toLowerCase();
+	}
+
+	/**
+	 * The pages waiting on a single host, and what has been learned about it
+	 */
+	private class Host
+	{
+		/** The pages waiting, or null while there are none */
+		private ArrayDeque<Waiting> pending;
+
+		/** The fetches in flight */
+		private int active;
+
+		/** The current cap on the fetches in flight, which may be fractional after an increase */
+		private double limit;
+
+		/** The earliest time the next fetch may start, as given by {@link System#nanoTime()} */
+		private long nextStart;
+
+		/** The moving average of how long the successful fetches took, or 0 before the first */
+		private double latency;
+
+		/** When the limit was last halved, so one burst of slow fetches only halves it once */
+		private long lastDecrease;
+
+		/** Whether a dispatch is already scheduled for when the delay has passed */
+		private boolean waiting;
+
+		public Host()
+		{
+			this.pending = null;
+			this.active = 0;
+			this.limit = initialLimit;
+			this.nextStart = System.nanoTime();
+			this.latency = 0;
+			this.lastDecrease = nextStart - TimeUnit.DAYS.toNanos(1);
+			this.waiting = false;
+		}
+
+		/**
+		 * @param now - the current time, as given by {@link System#nanoTime()}
+		 * @return - whether the host can be forgotten without letting its next page start any sooner
+		 */
+		public boolean isIdle(long now)
+		{
+			return pending == null && active == 0 && !waiting && now - nextStart >= 0;
+		}
+
+		/**
+		 * @return - the whole number of fetches allowed in flight
+		 */
+		public int allowed()
+		{
+			return (int) limit;
+		}
+
+		/**
+		 * Grows or shrinks the limit after a fetch
+		 * @param nanos - how long the fetch took
+		 * @param success - false if the fetch failed
+		 */
+		public void adjust(long nanos, boolean success)
+		{
+			long now = System.nanoTime();
+			boolean slow = latency > 0 && nanos > SLOWDOWN * Math.max(latency, MIN_LATENCY);
+
+			if(success)
+			{
+				latency = latency == 0 ? nanos : latency + SMOOTHING * (nanos - latency);
+			}
+
+			if(!success || slow)
+			{
+				// fetches that were already in flight when the limit was halved are not counted again
+				if(now - lastDecrease > nanos)
+				{
+					limit = Math.max(1, limit / 2);
+					lastDecrease = now;
+				}
+			}
+			else
+			{
+				limit = Math.min(maxPerHost, limit + 1 / limit);
+			}
+		}
+	}
+
+	/**
+	 * A page waiting on its host, with what starts its fetch
+	 */
+	private static class Waiting
+	{
+		private final URL url;
+		private final Consumer<URL> starter;
+
+		private Waiting(URL url, Consumer<URL> starter)
+		{
+			this.url = url;
+			this.starter = starter;
+		}
+	}
+}
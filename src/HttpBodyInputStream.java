@@ -0,0 +1,229 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads the body of a single HTTP/1.1 response from a connection, framed by
+ * its Content-Length header, by chunked transfer encoding, or by the server
+ * closing the connection. Once a framed body has been read to its end the
+ * connection is handed back to its pool for the next request. Closing the
+ * stream before that reads what is left of a short body, such as the framing
+ * after the end of a compressed stream, and otherwise closes the connection, as
+ * the rest of the body would be mistaken for the next response.
+ */
+public class HttpBodyInputStream extends InputStream {
+
+	/** Marks a body that ends when the server closes the connection */
+	private static final long UNTIL_CLOSE = -1;
+
+	/** The most bytes read to reach the end of the body when the stream is closed early */
+	private static final int DRAIN_LIMIT = 64 * 1024;
+
+	private final HttpConnection connection;
+	private final ConnectionPool pool;
+	private final InputStream input;
+	private final boolean chunked;
+	private final boolean keepAlive;
+
+	/** The bytes left in the body, or in the current chunk */
+	private long remaining;
+	private boolean firstChunk;
+	private boolean finished;
+	private boolean closed;
+
+	/**
+	 * Initializes a stream over the body of a response whose headers have just
+	 * been read from the connection
+	 *
+	 * @param connection - the connection the response is read from
+	 * @param pool - the pool to hand the connection back to, or null to close it
+	 * @param length - the Content-Length of the body, or -1 if it was not given
+	 * @param chunked - whether the body uses chunked transfer encoding
+	 * @param keepAlive - whether the server allows another request on the connection
+	 */
+	public HttpBodyInputStream(HttpConnection connection, ConnectionPool pool, long length, boolean chunked, boolean keepAlive)
+	{
+		this.connection = connection;
+		this.pool = pool;
+		this.input = connection.getInput();
+		this.chunked = chunked;
+		this.remaining = chunked ? 0 : length < 0 ? UNTIL_CLOSE : length;
+		this.keepAlive = keepAlive && (chunked || length >= 0);
+		this.firstChunk = true;
+		this.finished = false;
+		this.closed = false;
+
+		if(!chunked && length == 0)
+		{
+			finish();
+		}
+	}
+
+	@Override
+	public int read() throws IOException
+	{
+		byte[] single = new byte[1];
+		return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] buffer, int offset, int length) throws IOException
+	{
+		if(closed)
+		{
+			throw new IOException("Stream closed");
+		}
+
+		if(length == 0)
+		{
+			return 0;
+		}
+
+		if(finished || (chunked && remaining == 0 && !nextChunk()))
+		{
+			return -1;
+		}
+
+		int wanted = remaining == UNTIL_CLOSE ? length : (int) Math.min(length, remaining);
+		int read = input.read(buffer, offset, wanted);
+
+		if(read == -1)
+		{
+			if(remaining != UNTIL_CLOSE)
+			{
+				connection.close();
+				closed = true;
+				throw new EOFException("Connection closed before the end of the response");
+			}
+
+			finish();
+			return -1;
+		}
+
+		if(remaining != UNTIL_CLOSE)
+		{
+			remaining -= read;
+
+			if(remaining == 0 && !chunked)
+			{
+				finish();
+			}
+		}
+
+		return read;
+	}
+
+	/**
+	 * Reads the size of the next chunk, along with the trailers after the last one
+	 *
+	 * @return - true if there is another chunk, false at the end of the body
+	 * @throws IOException
+	 */
+	private boolean nextChunk() throws IOException
+	{
+		if(!firstChunk)
+		{
+			// the line ending after the data of the previous chunk
+			connection.readLine();
+		}
+
+		firstChunk = false;
+		String line = connection.readLine();
+
+		if(line == null)
+		{
+			throw new EOFException("Connection closed before the end of the response");
+		}
+
+		int extension = line.indexOf(';');
+
+		try
+		{
+			remaining = Long.parseLong((extension < 0 ? line : line.substring(0, extension)).trim(), 16);
+		}
+		catch(NumberFormatException e)
+		{
+			throw new IOException("Invalid chunk size: " + line);
+		}
+
+		if(remaining > 0)
+		{
+			return true;
+		}
+
+		while((line = connection.readLine()) != null && !line.isEmpty())
+		{
+			// trailers are not used
+		}
+
+		finish();
+		return false;
+	}
+
+	/**
+	 * Checks whether the whole body has been read
+	 *
+	 * @return - true at the end of the body
+	 */
+	public boolean isFinished()
+	{
+		return finished;
+	}
+
+	/**
+	 * Hands the connection back to its pool, or closes it if it cannot be reused
+	 */
+	private void finish()
+	{
+		finished = true;
+
+		if(keepAlive && pool != null)
+		{
+			pool.release(connection);
+		}
+		else
+		{
+			connection.close();
+		}
+	}
+
+	@Override
+	public void close()
+	{
+		if(!closed && !finished && keepAlive)
+		{
+			drain();
+		}
+
+		if(!closed && !finished)
+		{
+			connection.close();
+		}
+
+		closed = true;
+	}
+
+	/**
+	 * Reads the rest of the body if it is short enough, so the connection can
+	 * be reused
+	 */
+	private void drain()
+	{
+		byte[] buffer = new byte[4096];
+		int drained = 0;
+
+		try
+		{
+			int read;
+
+			while(drained < DRAIN_LIMIT && (read = read(buffer, 0, buffer.length)) != -1)
+			{
+				drained += read;
+			}
+		}
+		catch(IOException e)
+		{
+			// the connection is closed below instead of reused
+		}
+	}
+}
@@ -0,0 +1,161 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import javax.net.SocketFactory;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * A socket to a web server that can carry several HTTP/1.1 requests one after
+ * the other, along with buffered streams that outlive any single request.
+ */
+public class HttpConnection implements Closeable {
+
+	private final String key;
+	private final Socket socket;
+	private final InputStream input;
+	private final OutputStream output;
+	private long lastUsed;
+	private boolean reused;
+
+	/**
+	 * Opens a connection
+	 *
+	 * @param host - the host to connect to
+	 * @param port - the port to connect to
+	 * @param https - whether to use TLS
+	 * @throws IOException
+	 */
+	public HttpConnection(String host, int port, boolean https) throws IOException
+	{
+		this.key = key(host, port, https);
+		this.socket = https ?
+				SSLSocketFactory.getDefault().createSocket(host, port) :
+				SocketFactory.getDefault().createSocket(host, port);
+		this.input = new BufferedInputStream(socket.getInputStream());
+		this.output = new BufferedOutputStream(socket.getOutputStream());
+		this.lastUsed = System.nanoTime();
+		this.reused = false;
+	}
+
+	/**
+	 * Returns the key shared by every connection to the same server
+	 *
+	 * @param host - the host
+	 * @param port - the port
+	 * @param https - whether TLS is used
+	 * @return - the key
+	 */
+	public static String key(String host, int port, boolean https)
+	{
+		return (https ? "https://" : "http://") + host.toLowerCase() + ":" + port;
+	}
+
+	/**
+	 * @return - the key shared by every connection to the same server
+	 */
+	public String getKey()
+	{
+		return key;
+	}
+
+	/**
+	 * @return - the stream the response is read from
+	 */
+	public InputStream getInput()
+	{
+		return input;
+	}
+
+	/**
+	 * @return - the stream the request is written to
+	 */
+	public OutputStream getOutput()
+	{
+		return output;
+	}
+
+	/**
+	 * Checks whether the connection carried a request before the current one,
+	 * in which case the server may have closed it in the meantime
+	 *
+	 * @return - true if the connection was taken from a pool
+	 */
+	public boolean isReused()
+	{
+		return reused;
+	}
+
+	/**
+	 * Returns the time the connection was last put back into a pool
+	 *
+	 * @return - the time in nanoseconds, as given by {@link System#nanoTime()}
+	 */
+	public long getLastUsed()
+	{
+		return lastUsed;
+	}
+
+	/**
+	 * Marks the connection as idle, ready to carry another request
+	 */
+	public void idle()
+	{
+		lastUsed = System.nanoTime();
+		reused = true;
+	}
+
+	/**
+	 * Checks whether the socket is still open on our side
+	 *
+	 * @return - true if the connection can still be used
+	 */
+	public boolean isOpen()
+	{
+		return !socket.isClosed() && !socket.isInputShutdown() && !socket.isOutputShutdown();
+	}
+
+	/**
+	 * Reads a line of the status or headers of a response
+	 *
+	 * @return - the line without its line ending, or null at the end of the stream
+	 * @throws IOException
+	 */
+	public String readLine() throws IOException
+	{
+		ByteArrayOutputStream line = new ByteArrayOutputStream(64);
+		int b;
+
+		while((b = input.read()) != -1 && b != '\n')
+		{
+			line.write(b);
+		}
+
+		if(b == -1 && line.size() == 0)
+		{
+			return null;
+		}
+
+		String text = line.toString(StandardCharsets.ISO_8859_1);
+		return text.endsWith("\r") ? text.substring(0, text.length() - 1) : text;
+	}
+
+	@Override
+	public void close()
+	{
+		try
+		{
+			socket.close();
+		}
+		catch(IOException e)
+		{
+			// the connection is being thrown away either way
+		}
+	}
+}
@@ -0,0 +1,106 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A response whose status and headers have been read but whose body has not,
+ * so it can be streamed straight from the connection instead of being held
+ * in memory. The body is already decompressed. Closing the response hands the
+ * connection back to its pool if the body was read to its end.
+ */
+public class HttpResponse implements Closeable {
+
+	private final Map<String, List<String>> headers;
+	private final InputStream body;
+
+	/**
+	 * Initializes a response
+	 *
+	 * @param headers - the status line under the null key and the headers, as
+	 *                returned by {@link java.net.URLConnection#getHeaderFields()}
+	 * @param body - the decompressed body
+	 */
+	public HttpResponse(Map<String, List<String>> headers, InputStream body)
+	{
+		this.headers = headers;
+		this.body = body;
+	}
+
+	/**
+	 * @return - the status line under the null key and the headers
+	 */
+	public Map<String, List<String>> getHeaders()
+	{
+		return headers;
+	}
+
+	/**
+	 * @return - the status code, or -1 if it cannot be determined
+	 */
+	public int getStatusCode()
+	{
+		try
+		{
+			return HTMLFetcher.getStatusCode(headers);
+		}
+		catch(RuntimeException e)
+		{
+			return -1;
+		}
+	}
+
+	/**
+	 * Finds a header regardless of the case of its name
+	 *
+	 * @param name - the name of the header
+	 * @return - the last value of the header, or null if it is missing
+	 */
+	public String getHeader(String name)
+	{
+		return HttpsFetcher.header(headers, name);
+	}
+
+	/**
+	 * Returns the charset given by the Content-Type header
+	 *
+	 * @return - the charset, or null if it is missing or not supported
+	 */
+	public Charset getCharset()
+	{
+		String type = getHeader("Content-Type");
+
+		if(type == null)
+		{
+			return null;
+		}
+
+		for(String parameter : type.split(";"))
+		{
+			String[] split = parameter.trim().split("=", 2);
+
+			if(split.length == 2 && split[0].trim().equalsIgnoreCase("charset"))
+			{
+				return HTMLFetcher.charset(split[1]);
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * @return - the decompressed body, read straight from the connection
+	 */
+	public InputStream getBody()
+	{
+		return body;
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		body.close();
+	}
+}
@@ -1,21 +1,46 @@
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.PrintWriter;
+import java.io.PushbackInputStream;
 import java.net.MalformedURLException;
-import java.net.Socket;
 import java.net.URL;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
-import javax.net.SocketFactory;
-import javax.net.ssl.SSLSocketFactory;
-
+/**
+ * Fetches web pages over HTTP/1.1. Connections are kept alive and pooled per
+ * server, so a crawl that stays on a few hosts only pays for a handful of
+ * handshakes. Responses are framed by their Content-Length or chunked transfer
+ * encoding so the connection can carry the next request afterwards. Bodies are
+ * requested compressed with gzip or deflate and decompressed while they are
+ * read, counting the bytes received and the bytes they decompress to.
+ * {@link #open(URL)} hands the body over as a stream, so it never has to be
+ * held in memory as a whole.
+ */
 public class HttpsFetcher {
 
+	/** The most idle connections kept per server */
+	private static final int CONNECTIONS_PER_HOST = 8;
+
+	/** How long an idle connection is kept, in seconds */
+	private static final long IDLE_TIMEOUT = 30;
+
+	private static final ConnectionPool pool = new ConnectionPool(CONNECTIONS_PER_HOST, IDLE_TIMEOUT);
+
+	/** The bytes of response bodies as received, and once decompressed */
+	private static final LongAdder received = new LongAdder();
+	private static final LongAdder decoded = new LongAdder();
+
 	/**
 	 * Fetches the headers and content for the specified URL. The content is
 	 * placed as a list of all the lines fetched under the "Content" key.
@@ -25,72 +50,252 @@ public class HttpsFetcher {
 	 * @throws IOException if unable to fetch headers and content
 	 */
 	public static Map<String, List<String>> fetchURL(URL url) throws IOException {
-		// used to store all headers and content
-		// use the same data structure as URLConnection.getHeaderFields()
-		Map<String, List<String>> results = new HashMap<>();
+		try (HttpResponse response = open(url)) {
+			// use the same data structure as URLConnection.getHeaderFields()
+			Map<String, List<String>> results = new HashMap<>(response.getHeaders());
+			Charset charset = response.getCharset();
+
+			// process remaining content
+			List<String> lines = new ArrayList<>();
+			BufferedReader reader = new BufferedReader(new InputStreamReader(response.getBody(),
+					charset == null ? Charset.defaultCharset() : charset));
+			String line;
+
+			while ((line = reader.readLine()) != null) {
+				lines.add(line);
+			}
 
+			results.put("Content", lines);
+			return results;
+		}
+	}
+
+	/**
+	 * Sends a request for the specified URL and reads the status line and
+	 * headers of the response, leaving the body to be streamed. The response
+	 * must be closed once done with.
+	 *
+	 * @param url the url to fetch
+	 * @return the response
+	 * @throws IOException if unable to fetch the headers
+	 */
+	public static HttpResponse open(URL url) throws IOException {
 		String protocol = url.getProtocol();
 		String host = url.getHost();
-		String resource = url.getFile().isEmpty() ? "/" : url.getFile();
 
 		// set default port based on protocol
 		boolean https = (protocol != null) && protocol.equalsIgnoreCase("https");
 		int defaultPort = https ? 443 : 80;
 		int port = url.getPort() < 0 ? defaultPort : url.getPort();
 
-		try (
-				// open up a network socket to the webserver
-				Socket socket = https ?
-						SSLSocketFactory.getDefault().createSocket(host, port) :
-						SocketFactory.getDefault().createSocket(host, port);
-
-				// create a writer for the request
-				PrintWriter request = new PrintWriter(socket.getOutputStream());
-
-				// create a reader for the response
-				InputStreamReader input = new InputStreamReader(socket.getInputStream());
-				BufferedReader response = new BufferedReader(input);
-		) {
-			// write request to socket
-			request.printf("GET %s HTTP/1.1\r\n", resource);
-			request.printf("Host: %s\r\n", host);
-			request.printf("Connection: close\r\n");
-			request.printf("\r\n");
-			request.flush();
-
-			// fetch status line from server
-			String line = response.readLine();
-
-			// add status line in same way as URLConnection.getHeaderFields()
-			results.put(null, Arrays.asList(line));
-
-			// process remaining headers
-			while ((line = response.readLine()) != null) {
-				// detect empty line between headers and content
-				if (line.trim().isEmpty()) {
-					break;
+		while (true) {
+			HttpConnection connection = pool.acquire(host, port, https);
+			Map<String, List<String>> headers;
+
+			try {
+				headers = request(url, connection);
+			}
+			catch (IOException e) {
+				connection.close();
+
+				// a pooled connection may have been closed by the server while
+				// idle, so only a fresh connection failing is an error
+				if (!connection.isReused()) {
+					throw e;
 				}
 
-				String[] split = line.split(":\\s+", 2);
-				assert split.length == 2;
+				continue;
+			}
 
-				// handle cases where header appears more than once
-				results.putIfAbsent(split[0], new ArrayList<>());
-				results.get(split[0]).add(split[1]);
+			try {
+				HttpBodyInputStream body = openBody(headers, connection);
+				return new HttpResponse(headers, decode(headers, body, body.isFinished()));
+			}
+			catch (IOException e) {
+				connection.close();
+				throw e;
 			}
+		}
+	}
 
-			// process remaining content
-			List<String> lines = new ArrayList<>();
-			while ((line = response.readLine()) != null) {
-				lines.add(line);
+	/**
+	 * Sends a request over a connection and reads the status line and headers
+	 * of the response.
+	 *
+	 * @param url the url to fetch
+	 * @param connection the connection to the server of the url
+	 * @return a map with the status line under the null key and the headers
+	 * @throws IOException if unable to fetch the headers
+	 */
+	private static Map<String, List<String>> request(URL url, HttpConnection connection) throws IOException {
+		// use the same data structure as URLConnection.getHeaderFields()
+		Map<String, List<String>> results = new HashMap<>();
+		String resource = url.getFile().isEmpty() ? "/" : url.getFile();
+
+		// write request to socket
+		String request = String.format("GET %s HTTP/1.1\r\nHost: %s\r\nConnection: keep-alive\r\nAccept-Encoding: gzip, deflate\r\n\r\n", resource, url.getHost());
+		connection.getOutput().write(request.getBytes(StandardCharsets.ISO_8859_1));
+		connection.getOutput().flush();
+
+		// fetch status line from server
+		String line = connection.readLine();
+
+		if (line == null) {
+			throw new IOException("Connection closed before the response");
+		}
+
+		// add status line in same way as URLConnection.getHeaderFields()
+		results.put(null, Arrays.asList(line));
+
+		// process remaining headers until the empty line before the content
+		while ((line = connection.readLine()) != null && !line.trim().isEmpty()) {
+			String[] split = line.split(":\\s*", 2);
+
+			if (split.length < 2) {
+				continue;
 			}
 
-			results.put("Content", lines);
+			// handle cases where header appears more than once
+			results.putIfAbsent(split[0], new ArrayList<>());
+			results.get(split[0]).add(split[1].trim());
 		}
 
 		return results;
 	}
 
+	/**
+	 * Opens the body of a response whose headers have been read, framed as
+	 * the headers describe.
+	 *
+	 * @param headers the status line and headers of the response
+	 * @param connection the connection the response is read from
+	 * @return a stream over the body
+	 */
+	private static HttpBodyInputStream openBody(Map<String, List<String>> headers, HttpConnection connection) {
+		String status = headers.get(null).get(0);
+		String encoding = header(headers, "Transfer-Encoding");
+		String length = header(headers, "Content-Length");
+		String close = header(headers, "Connection");
+
+		boolean keepAlive = status.startsWith("HTTP/1.1") && (close == null || !close.equalsIgnoreCase("close"));
+		boolean chunked = encoding != null && encoding.toLowerCase().contains("chunked");
+		long size = -1;
+
+		int code;
+
+		try {
+			code = HTMLFetcher.getStatusCode(headers);
+		}
+		catch (RuntimeException e) {
+			code = -1;
+		}
+
+		if (code == 204 || code == 304 || (code >= 100 && code < 200)) {
+			size = 0;
+		}
+		else if (!chunked && length != null) {
+			try {
+				size = Long.parseLong(length.trim());
+			}
+			catch (NumberFormatException e) {
+				keepAlive = false;
+			}
+		}
+
+		return new HttpBodyInputStream(connection, pool, size, chunked, keepAlive);
+	}
+
+	/**
+	 * Decompresses a body as described by its Content-Encoding header,
+	 * counting the bytes on both sides.
+	 *
+	 * @param headers the status line and headers of the response
+	 * @param body the body as received
+	 * @param empty whether the body is known to be empty
+	 * @return the decompressed body
+	 * @throws IOException if the compressed body is invalid
+	 */
+	static InputStream decode(Map<String, List<String>> headers, InputStream body, boolean empty) throws IOException {
+		String encoding = header(headers, "Content-Encoding");
+		InputStream input = new CountingInputStream(body, received);
+
+		// an empty body, as with redirects, holds no compressed data at all
+		if (encoding == null || encoding.equalsIgnoreCase("identity") || empty) {
+			// nothing to decompress
+		}
+		else if (encoding.equalsIgnoreCase("gzip") || encoding.equalsIgnoreCase("x-gzip")) {
+			input = new GZIPInputStream(input);
+		}
+		else if (encoding.equalsIgnoreCase("deflate")) {
+			input = inflate(input);
+		}
+		else {
+			body.close();
+			throw new IOException("Unsupported content encoding: " + encoding);
+		}
+
+		return new CountingInputStream(input, decoded);
+	}
+
+	/**
+	 * Decompresses a deflate body. The standard wraps the compressed data in a
+	 * zlib header, but some servers send it raw, so the header is checked for.
+	 *
+	 * @param input the body as received
+	 * @return the decompressed body
+	 * @throws IOException if unable to read the body
+	 */
+	private static InputStream inflate(InputStream input) throws IOException {
+		PushbackInputStream pushback = new PushbackInputStream(input, 2);
+		byte[] header = new byte[2];
+		int read = pushback.readNBytes(header, 0, 2);
+		pushback.unread(header, 0, read);
+
+		int method = header[0] & 0x0F;
+		int check = ((header[0] & 0xFF) << 8) | (header[1] & 0xFF);
+		boolean zlib = read == 2 && method == 8 && check % 31 == 0;
+
+		return new InflaterInputStream(pushback, new Inflater(!zlib));
+	}
+
+	/**
+	 * Returns the number of bytes of response bodies received, compressed or not.
+	 *
+	 * @return the bytes received
+	 */
+	public static long receivedBytes() {
+		return received.sum();
+	}
+
+	/**
+	 * Returns the number of bytes response bodies decompressed to, or were if
+	 * they were not compressed.
+	 *
+	 * @return the bytes decoded
+	 */
+	public static long decodedBytes() {
+		return decoded.sum();
+	}
+
+	/**
+	 * Finds a header regardless of the case of its name.
+	 *
+	 * @param headers the status line and headers of a response
+	 * @param name the name of the header
+	 * @return the last value of the header, or null if it is missing
+	 */
+	public static String header(Map<String, List<String>> headers, String name) {
+		String value = null;
+
+		for (Map.Entry<String, List<String>> entry : headers.entrySet()) {
+			if (entry.getKey() != null && entry.getKey().equalsIgnoreCase(name) && !entry.getValue().isEmpty()) {
+				value = entry.getValue().get(entry.getValue().size() - 1);
+			}
+		}
+
+		return value;
+	}
+
 	/**
 	 * See {@link #fetchURL(URL)} for details.
 	 *
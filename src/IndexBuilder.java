@@ -3,10 +3,7 @@ import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.text.Normalizer;
 import java.util.List;
-import opennlp.tools.stemmer.snowball.SnowballStemmer;
-import opennlp.tools.stemmer.snowball.SnowballStemmer.ALGORITHM;
 
 /**
  * This class contains various methods for manipulating text.
@@ -24,28 +21,11 @@ public class IndexBuilder {
 	{
 		try(BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8))
 		{
-			String line;
-			int i = 1;
-
-			SnowballStemmer stemmer = new SnowballStemmer(ALGORITHM.ENGLISH);
-			
-			while((line = reader.readLine()) != null)
-			{
-				
-				String[] clean = textCleaner(line);
-				
-				for(String s : clean)
-				{
-					String trim = stemmer.stem(s.toLowerCase().trim()).toString();
-					
-					if(!trim.isEmpty())
-					{
-						index.add(trim, path.toString(), i);
-						i++;
-					}
-				}
-			}
+			String location = path.toString();
+			Tokenizer.tokenize(reader, (word, position) -> index.add(WordStemmer.stem(word.toString()), location, position));
 		}
+		
+		index.compact();
 	}
 	
 	
@@ -67,18 +47,4 @@ public class IndexBuilder {
 			readFile(p, index);	
 		}
 	}
-	
-	/**
-	 * Helper method to do the cleaning and normalizing of text
-	 * @param line - the line of the file we are on that we want to clean/parse
-	 * @return - an array containing the cleaned strings
-	 */
-	public static String[] textCleaner(String line)
-	{	
-		String cleaned = Normalizer.normalize(line, Normalizer.Form.NFD).replaceAll("(?U)[^\\p{Alpha}\\p{Space}]+", "");
-		
-		String[] clean = cleaned.split("(?U)\\p{Space}+");
-		
-		return clean;
-	}
 }
\ No newline at end of file
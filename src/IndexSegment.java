@@ -0,0 +1,953 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.IntFunction;
+import java.util.zip.CRC32;
+
+/**
+ * A read-only copy of an inverted index stored in a single binary file. The
+ * file is memory-mapped when opened, and every search is answered straight
+ * from the mapped pages, so opening a segment takes the same time no matter
+ * how large the index is, and several processes serving the same segment
+ * share one copy of it in the page cache.
+ *
+ * <p>A segment file is laid out as follows, with every number stored as a
+ * big-endian int:
+ *
+ * <pre>
+ * header     magic, version, term count, document count,
+ *            term table offset, document table offset,
+ *            CRC32 checksum of everything after the header
+ * documents  for each document, sorted by path:
+ *            word count, path length, UTF-8 path
+ * terms      for each term, sorted:
+ *            term length, UTF-8 term, document count, and for each document
+ *            sorted by ID: document ID, position count, encoded length,
+ *            positions encoded as in {@link PositionList}
+ * tables     the offset of every term, then the offset of every document
+ * </pre>
+ *
+ * Segments are limited to 2GB, the most a single buffer can map.
+ */
+public class IndexSegment {
+
+	/** The first four bytes of every segment file. */
+	public static final int MAGIC = 0x53524348;
+
+	/** The version of the format written by this class. */
+	public static final int VERSION = 2;
+
+	private static final int HEADER = 28;
+
+	private final ByteBuffer buffer;
+	private final int terms;
+	private final int documents;
+	private final int termTable;
+	private final int documentTable;
+	private final int checksum;
+
+	/**
+	 * Checks the header of a mapped segment and reads its table locations
+	 *
+	 * @param buffer - the mapped contents of the segment file
+	 * @throws IOException if the file is not a segment of a supported version
+	 */
+	private IndexSegment(ByteBuffer buffer) throws IOException
+	{
+		if(buffer.capacity() < HEADER || buffer.getInt(0) != MAGIC)
+		{
+			throw new IOException("Not an index segment file");
+		}
+
+		if(buffer.getInt(4) != VERSION)
+		{
+			throw new IOException("Unsupported index segment version: " + buffer.getInt(4));
+		}
+
+		this.buffer = buffer;
+		this.terms = buffer.getInt(8);
+		this.documents = buffer.getInt(12);
+		this.termTable = buffer.getInt(16);
+		this.documentTable = buffer.getInt(20);
+		this.checksum = buffer.getInt(24);
+	}
+
+	/**
+	 * Opens a segment file read-only by mapping it into memory
+	 *
+	 * @param path - the segment file to open
+	 * @return - the opened segment
+	 * @throws IOException if the file cannot be mapped or is not a valid segment
+	 */
+	public static IndexSegment open(Path path) throws IOException
+	{
+		try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+		{
+			if(channel.size() > Integer.MAX_VALUE)
+			{
+				throw new IOException("Index segment is too large to map: " + path);
+			}
+
+			// the mapping stays valid after the channel is closed
+			return new IndexSegment(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	/**
+	 * Opens a segment file, checks it against its checksum, and copies it into
+	 * an inverted index
+	 *
+	 * @param path - the segment file to load
+	 * @param index - the index to add the segment to
+	 * @throws IOException if the file cannot be read or is not a valid segment
+	 *
+	 * @see #addTo(InvertedIndex)
+	 */
+	public static void load(Path path, InvertedIndex index) throws IOException
+	{
+		IndexSegment segment = open(path);
+		segment.verify();
+		segment.addTo(index);
+	}
+
+	/**
+	 * Checks the contents of the segment against the checksum stored in its
+	 * header. Reads every page of the file, so it is only done when the segment
+	 * is loaded, not when it is opened.
+	 *
+	 * @throws IOException if the segment has been truncated or corrupted
+	 */
+	public void verify() throws IOException
+	{
+		CRC32 crc = new CRC32();
+		crc.update(buffer.duplicate().position(HEADER));
+
+		if((int) crc.getValue() != checksum)
+		{
+			throw new IOException("Index segment checksum does not match");
+		}
+	}
+
+	/**
+	 * Writes the contents of an inverted index to a segment file
+	 *
+	 * @param terms - the term dictionary of the index
+	 * @param postings - the postings of every term, indexed by term ID
+	 * @param documents - the document table of the index
+	 * @param path - the segment file to write, which is only replaced once the new one is complete
+	 * @throws IOException if unable to write the file
+	 */
+	static void write(TermDictionary terms, ArrayList<PostingList> postings, DocumentTable documents, Path path) throws IOException
+	{
+		// written beside the segment and moved over it once complete, so the old segment
+		// survives a failed write and a mapped copy of it can still be served
+		Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+
+		try
+		{
+			try(SegmentWriter writer = new SegmentWriter(temporary))
+			{
+				// documents are renumbered in path order, so paths can be found by binary search
+				int[] rank = new int[documents.size()];
+				int[] documentOffsets = new int[documents.size()];
+				int next = 0;
+
+				writer.seek(HEADER);
+
+				for(String location : documents.toMap().keySet())
+				{
+					int document = documents.lookup(location);
+					rank[document] = next;
+					documentOffsets[next++] = writer.position();
+
+					writer.putInt(documents.count(document));
+					writer.putString(location);
+				}
+
+				int[] termOffsets = new int[terms.size()];
+				next = 0;
+
+				for(String word : terms.terms())
+				{
+					PostingList list = postings.get(terms.lookup(word));
+					termOffsets[next++] = writer.position();
+
+					writer.putString(word);
+					writer.putInt(list.size());
+
+					// sort the renumbered documents, keeping the original index in the low bits
+					long[] order = new long[list.size()];
+
+					for(int i = 0; i < order.length; i++)
+					{
+						order[i] = ((long) rank[list.document(i)] << 32) | i;
+					}
+
+					Arrays.sort(order);
+
+					for(long entry : order)
+					{
+						PositionList positions = list.positions((int) entry);
+						byte[] encoded = positions.encoded();
+
+						writer.putInt((int) (entry >>> 32));
+						writer.putInt(positions.size());
+						writer.putInt(encoded.length);
+						writer.putBytes(encoded);
+					}
+				}
+
+				int termTable = writer.position();
+
+				for(int offset : termOffsets)
+				{
+					writer.putInt(offset);
+				}
+
+				int documentTable = writer.position();
+
+				for(int offset : documentOffsets)
+				{
+					writer.putInt(offset);
+				}
+
+				int checksum = writer.checksum();
+
+				writer.seek(0);
+				writer.putInt(MAGIC);
+				writer.putInt(VERSION);
+				writer.putInt(terms.size());
+				writer.putInt(documents.size());
+				writer.putInt(termTable);
+				writer.putInt(documentTable);
+				writer.putInt(checksum);
+				writer.force();
+			}
+
+			Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		finally
+		{
+			Files.deleteIfExists(temporary);
+		}
+	}
+
+	/**
+	 * Method that searches for exact searches between query words and words within the segment
+	 *
+	 * @param queryWords - The words from the query file we are looking for
+	 * @return - An array list of type results
+	 */
+	public ArrayList<Result> exactSearch(Collection<String> queryWords)
+	{
+		ArrayList<Result> resultsList = matches(queryWords, true);
+		Collections.sort(resultsList);
+		return resultsList;
+	}
+
+	/**
+	 * Method that searches for partial searches between query words and words within the segment
+	 *
+	 * @param queryWords - A line of words from the query file we are looking for
+	 * @return - An array list of type results
+	 */
+	public ArrayList<Result> partialSearch(Collection<String> queryWords)
+	{
+		ArrayList<Result> resultsList = matches(queryWords, false);
+		Collections.sort(resultsList);
+		return resultsList;
+	}
+
+	/**
+	 * Method that searches the segment but only keeps the best results
+	 *
+	 * @param queryWords - The words we are looking for
+	 * @param exact - true for an exact search, false for a partial search
+	 * @param limit - The maximum number of results to return
+	 * @return - The best results along with the total number of matches
+	 */
+	public SearchResults search(Collection<String> queryWords, boolean exact, int limit)
+	{
+		return accumulate(queryWords, exact).select(limit, this::path, this::count);
+	}
+
+	/**
+	 * Collects a result for every document in the segment matching the query
+	 * words, in no particular order
+	 *
+	 * @param queryWords - The words we are looking for
+	 * @param exact - true to match whole words, false to match words as prefixes
+	 * @return - An unsorted array list of type results
+	 */
+	ArrayList<Result> matches(Collection<String> queryWords, boolean exact)
+	{
+		return accumulate(queryWords, exact).results(this::path, this::count);
+	}
+
+	/**
+	 * Adds up the occurrences of the query words within every matching document
+	 *
+	 * @param queryWords - The words we are looking for
+	 * @param exact - true to match whole words, false to match words as prefixes
+	 * @return - The occurrences of the query words by document ID
+	 */
+	private ScoreAccumulator accumulate(Collection<String> queryWords, boolean exact)
+	{
+		ScoreAccumulator scores = ScoreAccumulator.forThread(documents);
+
+		for(String stem : queryWords)
+		{
+			int first = findTerm(stem);
+
+			if(exact)
+			{
+				if(first >= 0)
+				{
+					searchHelper(first, scores);
+				}
+			}
+
+			else
+			{
+				// the terms starting with the stem form one contiguous block of the sorted table
+				int last = findPrefixEnd(stem);
+
+				for(int term = first < 0 ? -(first + 1) : first; term < last; term++)
+				{
+					searchHelper(term, scores);
+				}
+			}
+		}
+
+		return scores;
+	}
+
+	/**
+	 * A helper method for searching. Reads the postings of a term straight from
+	 * the mapped file and adds them to the occurrences.
+	 *
+	 * @param term - The rank of the term in the segment
+	 * @param scores - The occurrences found so far by document ID
+	 */
+	private void searchHelper(int term, ScoreAccumulator scores)
+	{
+		int offset = postings(term);
+		int count = buffer.getInt(offset);
+		offset += 4;
+
+		for(int i = 0; i < count; i++)
+		{
+			scores.add(buffer.getInt(offset), buffer.getInt(offset + 4));
+			offset += 12 + buffer.getInt(offset + 8);
+		}
+	}
+
+	/**
+	 * Copies every word, path and position of the segment into an inverted index
+	 *
+	 * @param index - the index to add the segment to
+	 */
+	public void addTo(InvertedIndex index)
+	{
+		InvertedIndex local = new InvertedIndex();
+		String[] paths = new String[documents];
+
+		for(int document = 0; document < documents; document++)
+		{
+			paths[document] = path(document);
+		}
+
+		for(int term = 0; term < terms; term++)
+		{
+			String word = term(term);
+			int offset = postings(term);
+			int count = buffer.getInt(offset);
+			offset += 4;
+
+			for(int i = 0; i < count; i++)
+			{
+				local.addPositions(word, paths[buffer.getInt(offset)], positions(offset));
+				offset += 12 + buffer.getInt(offset + 8);
+			}
+		}
+
+		index.addIndexes(local);
+	}
+
+	/**
+	 * Method to return an unmodifiable, sorted Set containing every word in the segment.
+	 * The words are read from the mapped file while the set is iterated.
+	 *
+	 * @return - the unmodifiable set
+	 */
+	public Set<String> getWords()
+	{
+		return new AbstractSet<String>()
+		{
+			@Override
+			public Iterator<String> iterator()
+			{
+				return new TableIterator(terms, IndexSegment.this::term);
+			}
+
+			@Override
+			public boolean contains(Object word)
+			{
+				return word instanceof String && findTerm((String) word) >= 0;
+			}
+
+			@Override
+			public int size()
+			{
+				return terms;
+			}
+		};
+	}
+
+	/**
+	 * Method to return an unmodifiable, sorted Set containing the file locations of a word
+	 *
+	 * @param word - the word we're looking for
+	 * @return - the unmodifiable set
+	 */
+	public Set<String> getLocations(String word)
+	{
+		int term = findTerm(word);
+
+		if(term < 0)
+		{
+			return Collections.emptySet();
+		}
+
+		TreeSet<String> paths = new TreeSet<>();
+		int offset = postings(term);
+		int count = buffer.getInt(offset);
+		offset += 4;
+
+		for(int i = 0; i < count; i++)
+		{
+			paths.add(path(buffer.getInt(offset)));
+			offset += 12 + buffer.getInt(offset + 8);
+		}
+
+		return Collections.unmodifiableSet(paths);
+	}
+
+	/**
+	 * Method to return the positions of a word within a file
+	 *
+	 * @param word - the word we're looking for
+	 * @param location - the path we are searching
+	 * @return - the sorted positions, or an empty list if there are none
+	 */
+	public PositionList getPositionList(String word, String location)
+	{
+		int offset = find(word, location);
+		return offset < 0 ? new PositionList() : positions(offset);
+	}
+
+	/**
+	 * Boolean method to check if the segment contains a given word
+	 *
+	 * @param word - the word we are searching for
+	 * @return true if it exists in the segment
+	 */
+	public boolean containsWord(String word)
+	{
+		return findTerm(word) >= 0;
+	}
+
+	/**
+	 * Boolean method to check if the segment contains a given path
+	 *
+	 * @param word - the word we're looking for within the path
+	 * @param path - the path itself
+	 * @return true if it exists in the segment
+	 */
+	public boolean containsPath(String word, String path)
+	{
+		return find(word, path) >= 0;
+	}
+
+	/**
+	 * Boolean method to check if the segment contains the given key,
+	 * path and position
+	 *
+	 * @param word - the word we are searching for
+	 * @param path - the path itself
+	 * @param position - its location within the file
+	 * @return true if it exists in the segment
+	 */
+	public boolean containsLocation(String word, String path, int position)
+	{
+		int offset = find(word, path);
+		return offset >= 0 && positions(offset).contains(position);
+	}
+
+	/**
+	 * Method to return the number of words in the segment
+	 *
+	 * @return number of words in the segment
+	 */
+	public int words()
+	{
+		return terms;
+	}
+
+	/**
+	 * Method to return the total number of positions of the word
+	 * within a file
+	 *
+	 * @param word - the key we are using
+	 * @param location - the path we are searching
+	 * @return - the total number of key appearances
+	 */
+	public int positions(String word, String location)
+	{
+		int offset = find(word, location);
+		return offset < 0 ? 0 : buffer.getInt(offset + 4);
+	}
+
+	/**
+	 * Method to return an unmodifiable, sorted Set of every path in the segment.
+	 * The paths are read from the mapped file while the set is iterated.
+	 *
+	 * @return - the unmodifiable set
+	 */
+	public Set<String> getLocationPaths()
+	{
+		return new AbstractSet<String>()
+		{
+			@Override
+			public Iterator<String> iterator()
+			{
+				return new TableIterator(documents, IndexSegment.this::path);
+			}
+
+			@Override
+			public boolean contains(Object path)
+			{
+				return path instanceof String && findDocument((String) path) >= 0;
+			}
+
+			@Override
+			public int size()
+			{
+				return documents;
+			}
+		};
+	}
+
+	/**
+	 * Method to return the number of words in the given path
+	 *
+	 * @param key - the path we're accessing
+	 * @return - the total number of words within it, or 0 if it is not in the segment
+	 */
+	public int getLocationSize(String key)
+	{
+		int document = findDocument(key);
+		return document < 0 ? 0 : count(document);
+	}
+
+	/**
+	 * Finds the postings entry of a word within a path
+	 *
+	 * @param word - the word we are looking for
+	 * @param path - the path itself
+	 * @return - the offset of the entry, or -1 if the word does not appear in the path
+	 */
+	private int find(String word, String path)
+	{
+		int term = findTerm(word);
+		int document = findDocument(path);
+
+		if(term < 0 || document < 0)
+		{
+			return -1;
+		}
+
+		int offset = postings(term);
+		int count = buffer.getInt(offset);
+		offset += 4;
+
+		for(int i = 0; i < count; i++)
+		{
+			int current = buffer.getInt(offset);
+
+			if(current >= document)
+			{
+				return current == document ? offset : -1;
+			}
+
+			offset += 12 + buffer.getInt(offset + 8);
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Binary searches the term table
+	 *
+	 * @param word - the word to find
+	 * @return - the rank of the word, or (-(insertion point) - 1) if it is not in the segment
+	 */
+	private int findTerm(String word)
+	{
+		int low = 0;
+		int high = terms - 1;
+
+		while(low <= high)
+		{
+			int middle = (low + high) >>> 1;
+			int compare = term(middle).compareTo(word);
+
+			if(compare < 0)
+			{
+				low = middle + 1;
+			}
+			else if(compare > 0)
+			{
+				high = middle - 1;
+			}
+			else
+			{
+				return middle;
+			}
+		}
+
+		return -(low + 1);
+	}
+
+	/**
+	 * Binary searches the term table for the end of the block of terms starting
+	 * with the given prefix
+	 *
+	 * @param prefix - the prefix to look for
+	 * @return - the rank just past the last term starting with the prefix
+	 */
+	private int findPrefixEnd(String prefix)
+	{
+		int low = 0;
+		int high = terms;
+
+		while(low < high)
+		{
+			int middle = (low + high) >>> 1;
+			String term = term(middle);
+
+			if(term.startsWith(prefix) || term.compareTo(prefix) < 0)
+			{
+				low = middle + 1;
+			}
+			else
+			{
+				high = middle;
+			}
+		}
+
+		return low;
+	}
+
+	/**
+	 * Binary searches the document table
+	 *
+	 * @param path - the path to find
+	 * @return - the ID of the document, or a negative number if it is not in the segment
+	 */
+	private int findDocument(String path)
+	{
+		int low = 0;
+		int high = documents - 1;
+
+		while(low <= high)
+		{
+			int middle = (low + high) >>> 1;
+			int compare = path(middle).compareTo(path);
+
+			if(compare < 0)
+			{
+				low = middle + 1;
+			}
+			else if(compare > 0)
+			{
+				high = middle - 1;
+			}
+			else
+			{
+				return middle;
+			}
+		}
+
+		return -(low + 1);
+	}
+
+	/**
+	 * Reads the term stored at the given rank
+	 *
+	 * @param term - the rank of the term
+	 * @return - the term itself
+	 */
+	private String term(int term)
+	{
+		return string(buffer.getInt(termTable + term * 4));
+	}
+
+	/**
+	 * Returns the offset of the postings of the term stored at the given rank
+	 *
+	 * @param term - the rank of the term
+	 * @return - the offset of its document count
+	 */
+	private int postings(int term)
+	{
+		int offset = buffer.getInt(termTable + term * 4);
+		return offset + 4 + buffer.getInt(offset);
+	}
+
+	/**
+	 * Reads the path of the given document
+	 *
+	 * @param document - the ID of the document
+	 * @return - the path of the document
+	 */
+	private String path(int document)
+	{
+		return string(buffer.getInt(documentTable + document * 4) + 4);
+	}
+
+	/**
+	 * Reads the word count of the given document
+	 *
+	 * @param document - the ID of the document
+	 * @return - the word count of the document
+	 */
+	private int count(int document)
+	{
+		return buffer.getInt(buffer.getInt(documentTable + document * 4));
+	}
+
+	/**
+	 * Reads the positions of a postings entry
+	 *
+	 * @param offset - the offset of the entry
+	 * @return - the positions of the entry
+	 */
+	private PositionList positions(int offset)
+	{
+		byte[] encoded = new byte[buffer.getInt(offset + 8)];
+		buffer.get(offset + 12, encoded);
+		return PositionList.decode(encoded, buffer.getInt(offset + 4));
+	}
+
+	/**
+	 * Reads a length-prefixed UTF-8 string
+	 *
+	 * @param offset - the offset of the length
+	 * @return - the decoded string
+	 */
+	private String string(int offset)
+	{
+		byte[] bytes = new byte[buffer.getInt(offset)];
+		buffer.get(offset + 4, bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Iterates through one of the tables of the segment in order, reading each
+	 * entry only when it is reached
+	 */
+	private static class TableIterator implements Iterator<String>
+	{
+		private final int size;
+		private final IntFunction<String> reader;
+		private int index;
+
+		public TableIterator(int size, IntFunction<String> reader)
+		{
+			this.size = size;
+			this.reader = reader;
+			this.index = 0;
+		}
+
+		@Override
+		public boolean hasNext()
+		{
+			return index < size;
+		}
+
+		@Override
+		public String next()
+		{
+			if(index >= size)
+			{
+				throw new NoSuchElementException();
+			}
+
+			return reader.apply(index++);
+		}
+	}
+
+	/**
+	 * Writes a segment file sequentially through a buffered file channel,
+	 * keeping track of the offset of everything written and of the checksum of
+	 * everything written after the header
+	 */
+	private static class SegmentWriter implements AutoCloseable
+	{
+		private final FileChannel channel;
+		private final ByteBuffer buffer;
+		private final CRC32 crc;
+		private long position;
+
+		public SegmentWriter(Path path) throws IOException
+		{
+			this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+			this.buffer = ByteBuffer.allocateDirect(1 << 16);
+			this.crc = new CRC32();
+			this.position = 0;
+		}
+
+		/**
+		 * Returns the checksum of everything written after the header so far
+		 *
+		 * @return - the CRC32 checksum
+		 * @throws IOException if unable to write
+		 */
+		public int checksum() throws IOException
+		{
+			flush();
+			return (int) crc.getValue();
+		}
+
+		/**
+		 * Returns the offset the next value will be written at
+		 *
+		 * @return - the current offset
+		 * @throws IOException if the segment has grown too large to map
+		 */
+		public int position() throws IOException
+		{
+			if(position > Integer.MAX_VALUE)
+			{
+				throw new IOException("Index segment is too large to map");
+			}
+
+			return (int) position;
+		}
+
+		/**
+		 * Moves to the given offset, writing out everything buffered so far
+		 *
+		 * @param offset - the offset to write at next
+		 * @throws IOException if unable to write
+		 */
+		public void seek(long offset) throws IOException
+		{
+			flush();
+			channel.position(offset);
+			position = offset;
+		}
+
+		public void putInt(int value) throws IOException
+		{
+			if(buffer.remaining() < 4)
+			{
+				flush();
+			}
+
+			buffer.putInt(value);
+			position += 4;
+		}
+
+		public void putBytes(byte[] bytes) throws IOException
+		{
+			if(buffer.remaining() < bytes.length)
+			{
+				flush();
+			}
+
+			if(bytes.length > buffer.capacity())
+			{
+				ByteBuffer wrapped = ByteBuffer.wrap(bytes);
+				crc.update(bytes);
+
+				while(wrapped.hasRemaining())
+				{
+					channel.write(wrapped);
+				}
+			}
+			else
+			{
+				buffer.put(bytes);
+			}
+
+			position += bytes.length;
+		}
+
+		public void putString(String value) throws IOException
+		{
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			putInt(bytes.length);
+			putBytes(bytes);
+		}
+
+		/**
+		 * Writes out everything buffered so far and waits for it to reach the disk
+		 *
+		 * @throws IOException if unable to write
+		 */
+		public void force() throws IOException
+		{
+			flush();
+			channel.force(true);
+		}
+
+		/**
+		 * Writes out everything buffered so far
+		 *
+		 * @throws IOException if unable to write
+		 */
+		public void flush() throws IOException
+		{
+			buffer.flip();
+
+			// the header is only written once the checksum has been taken
+			crc.update(buffer.duplicate());
+
+			while(buffer.hasRemaining())
+			{
+				channel.write(buffer);
+			}
+
+			buffer.clear();
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			try
+			{
+				flush();
+			}
+			finally
+			{
+				channel.close();
+			}
+		}
+	}
+}
@@ -3,26 +3,34 @@ import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.Set;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.function.IntUnaryOperator;
+import java.util.function.ToIntFunction;
 
 public class InvertedIndex {
 	
-	private final TreeMap<String, TreeMap<String, TreeSet<Integer>>> index;
-	private final TreeMap<String, Integer> locations;
+	private final TermDictionary terms;
+	private final ArrayList<PostingList> postings;
+	private final DocumentTable documents;
+	private final ArrayList<PositionList> open;
+	
+	/** The document last added to with {@link #add(String, String, int)}, or -1 */
+	private int lastDocument;
 
 	/**
-	 * Initializes the index as a TreeMap
+	 * Initializes the term dictionary, the postings of each term, and the document table
 	 */
 	public InvertedIndex()
 	{
-		this.index = new TreeMap<>();
-		this.locations = new TreeMap<>();
+		this.terms = new TermDictionary();
+		this.postings = new ArrayList<>();
+		this.documents = new DocumentTable();
+		this.open = new ArrayList<>();
+		this.lastDocument = -1;
 	}
 	
 	/**
@@ -35,57 +43,177 @@ public class InvertedIndex {
 	 */
 	public boolean add(String word, String path, int occurrences)
 	{		
-		index.putIfAbsent(word, new TreeMap<String, TreeSet<Integer>>());
-		index.get(word).putIfAbsent(path,  new TreeSet<>());
+		int term = terms.add(word);
+		int document = documents.add(path);
+		
+		// the previous document is done, so its lists are compacted before the open list grows further
+		if(document != lastDocument)
+		{
+			compactOpen();
+			lastDocument = document;
+		}
+		
+		if(term == postings.size())
+		{
+			postings.add(new PostingList());
+		}
 		
-		boolean success = index.get(word).get(path).add(occurrences);
+		PositionList positions = postings.get(term).getOrCreate(document);
+		
+		if(positions.size() == 0 || positions.isCompact())
+		{
+			open.add(positions);
+		}
+		
+		boolean success = positions.add(occurrences);
 		
 		if(success)
 		{
-			locations.put(path, locations.getOrDefault(path, 0) + 1);
+			documents.increment(document, 1);
 		}
 
 		return success;
  	}
 	
 	/**
-	 * Method to add all information in one given inverted index to another
+	 * Method to add every position of a word within a path at once, taking
+	 * ownership of the given list if the word was not in the path yet
+	 * 
+	 * @param word - The word we're storing
+	 * @param path - The file path the positions belong to
+	 * @param positions - The compacted positions of the word within the path
+	 */
+	void addPositions(String word, String path, PositionList positions)
+	{
+		int term = terms.add(word);
+		int document = documents.add(path);
+		
+		if(term == postings.size())
+		{
+			postings.add(new PostingList());
+		}
+		
+		PositionList existing = postings.get(term).get(document);
+		
+		if(existing == null)
+		{
+			postings.get(term).put(document, positions);
+			documents.increment(document, positions.size());
+		}
+		else
+		{
+			documents.increment(document, existing.addAll(positions));
+		}
+	}
+	
+	/**
+	 * Method to compact every position list that was added to since the last call.
+	 * Adding to a different document does this already, so it only has to be called
+	 * once the last document has been completely added to the index.
+	 */
+	public void compact()
+	{
+		compactOpen();
+	}
+	
+	/**
+	 * Compacts the open position lists. Unlike {@link #compact()} this is not
+	 * overridden, so it can be called while a subclass already holds its lock.
+	 */
+	private void compactOpen()
+	{
+		for(PositionList positions : open)
+		{
+			positions.compact();
+		}
+		
+		open.clear();
+	}
+	
+	/**
+	 * Method to add all information in one given inverted index to another.
+	 * The other index is compacted first, so the position lists it hands over
+	 * are already encoded.
 	 * 
 	 * @param other - The index we are taking information from
 	 */
 	public void addIndexes(InvertedIndex other)
 	{
-		for(String word : other.index.keySet())
+		other.compact();
+		
+		// translate the document IDs of the other index into our own
+		int[] documentIds = new int[other.documents.size()];
+		
+		for(int i = 0; i < documentIds.length; i++)
 		{
-			if(!this.index.containsKey(word))
-			{
-				this.index.put(word, other.index.get(word));
-			}
-			else
+			documentIds[i] = this.documents.add(other.documents.path(i));
+			this.documents.increment(documentIds[i], other.documents.count(i));
+		}
+		
+		for(int i = 0; i < other.terms.size(); i++)
+		{
+			int term = this.terms.add(other.terms.term(i));
+			
+			if(term == this.postings.size())
 			{
-				for(String relativePath : other.index.get(word).keySet())
-				{
-					if(!this.index.get(word).containsKey(relativePath))
-					{
-						this.index.get(word).put(relativePath, other.index.get(word).get(relativePath));
-					}
-					else
-					{
-						this.index.get(word).get(relativePath).addAll(other.index.get(word).get(relativePath));
-					}
-				}
+				this.postings.add(new PostingList());
 			}
+			
+			this.postings.get(term).addAll(other.postings.get(i), documentIds);
 		}
+	}
 	
-		for(String key : other.locations.keySet())
+	/**
+	 * Method to divide the index into several smaller ones by word, handing
+	 * over the position lists rather than copying them. The index should not be
+	 * used afterwards.
+	 * 
+	 * @param part - Chooses the part each word goes to
+	 * @param parts - The number of parts
+	 * @return - The parts, each holding only the words chosen for it
+	 */
+	InvertedIndex[] split(ToIntFunction<String> part, int parts)
+	{
+		compact();
+		InvertedIndex[] split = new InvertedIndex[parts];
+		
+		for(int i = 0; i < parts; i++)
+		{
+			split[i] = new InvertedIndex();
+		}
+		
+		for(int term = 0; term < terms.size(); term++)
 		{
-			if(!this.locations.containsKey(key))
+			String word = terms.term(term);
+			InvertedIndex target = split[part.applyAsInt(word)];
+			PostingList list = postings.get(term);
+			
+			for(int i = 0; i < list.size(); i++)
 			{
-				this.locations.put(key, other.locations.get(key));
+				target.addPositions(word, documents.path(list.document(i)), list.positions(i));
 			}
-			else
+		}
+		
+		return split;
+	}
+	
+	/**
+	 * Method to add a copy of every word, path and position of this index to
+	 * another one, without sharing any position lists with it. Does not change
+	 * this index, which should already be compacted.
+	 * 
+	 * @param target - The index we are copying into
+	 */
+	void copyTo(InvertedIndex target)
+	{
+		for(int term = 0; term < terms.size(); term++)
+		{
+			String word = terms.term(term);
+			PostingList list = postings.get(term);
+			
+			for(int i = 0; i < list.size(); i++)
 			{
-				this.locations.put(key, this.locations.get(key) + other.locations.get(key));
+				target.addPositions(word, documents.path(list.document(i)), new PositionList(list.positions(i)));
 			}
 		}
 	}
@@ -98,17 +226,7 @@ public class InvertedIndex {
 	 */
 	public ArrayList<Result> exactSearch(Collection<String> queryWords)
 	{
-		HashMap<String, Result> resultsMap = new HashMap<>();
-		ArrayList<Result> resultsList = new ArrayList<>();
-		
-		for(String words : queryWords)
-		{
-			if(index.containsKey(words))
-			{
-				searchHelper(words, resultsList, resultsMap);
-			}
-		}
-		
+		ArrayList<Result> resultsList = matches(queryWords, true);
 		Collections.sort(resultsList);
 		return resultsList;
 	}
@@ -122,56 +240,125 @@ public class InvertedIndex {
 	 */
 	public ArrayList<Result> partialSearch(Collection<String> queryWords)
 	{
-		HashMap<String, Result> resultsMap = new HashMap<>();
-		ArrayList<Result> resultsList = new ArrayList<>();
-		
+		ArrayList<Result> resultsList = matches(queryWords, false);
+		Collections.sort(resultsList);
+		return resultsList;
+	}
+	
+	/**
+	 * Method that searches the inverted index but only keeps the best results,
+	 * selecting them with a bounded heap instead of sorting every match
+	 * 
+	 * @param queryWords - The words we are looking for
+	 * @param exact - true for an exact search, false for a partial search
+	 * @param limit - The maximum number of results to return
+	 * @return - The best results along with the total number of matches
+	 */
+	public SearchResults search(Collection<String> queryWords, boolean exact, int limit)
+	{
+		return accumulate(queryWords, exact).select(limit, documents::path, documents::count);
+	}
+	
+	/**
+	 * Collects a result for every document matching the query words, in no
+	 * particular order
+	 * 
+	 * @param queryWords - The words we are looking for
+	 * @param exact - true to match whole words, false to match words as prefixes
+	 * @return - An unsorted array list of type results
+	 */
+	ArrayList<Result> matches(Collection<String> queryWords, boolean exact)
+	{
+		return accumulate(queryWords, exact).results(documents::path, documents::count);
+	}
+	
+	/**
+	 * Adds up the occurrences of the query words within every matching document
+	 * 
+	 * @param queryWords - The words we are looking for
+	 * @param exact - true to match whole words, false to match words as prefixes
+	 * @return - The occurrences of the query words by document ID
+	 */
+	private ScoreAccumulator accumulate(Collection<String> queryWords, boolean exact)
+	{
+		ScoreAccumulator scores = ScoreAccumulator.forThread(documents.size());
+		accumulate(queryWords, exact, scores, null);
+		return scores;
+	}
+	
+	/**
+	 * Adds the occurrences of the query words to an accumulator that may be
+	 * shared with other indexes, under the document IDs the accumulator uses
+	 * 
+	 * @param queryWords - The words we are looking for
+	 * @param exact - true to match whole words, false to match words as prefixes
+	 * @param scores - The occurrences found so far
+	 * @param ids - Translates a document ID of this index into the accumulator, or to -1 to
+	 * 				leave the document out, or null if the IDs are the same
+	 */
+	void accumulate(Collection<String> queryWords, boolean exact, ScoreAccumulator scores, IntUnaryOperator ids)
+	{
 		for(String stem : queryWords)
 		{
-			for(String word : index.tailMap(stem).keySet())
+			if(exact)
 			{
-				if(word.startsWith(stem))
+				int term = terms.lookup(stem);
+				
+				if(term >= 0)
 				{
-					searchHelper(word, resultsList, resultsMap);
+					searchHelper(term, scores, ids);
 				}
-				
-				else
+			}
+			
+			else
+			{
+				for(int term : terms.withPrefix(stem))
 				{
-					break;
+					searchHelper(term, scores, ids);
 				}
 			}
 		}
-		
-		Collections.sort(resultsList);
-		return resultsList;
 	}
 	
 	/**
-	 * A helper method for searching. Validates the situation we are facing and stores the 
-	 * information accordingly
-	 * @param searchTerm - The query word we are looking for
-	 * @param resultsList - The arraylist of type result
-	 * @param resultsMap - A map which maps paths to their result
+	 * A helper method for searching. Adds the occurrences of a single term to
+	 * the documents it appears in
+	 * @param searchTerm - The ID of the query word we are looking for
+	 * @param scores - The occurrences found so far by document ID
+	 * @param ids - Translates a document ID into the accumulator, or null if the IDs are the same
 	 */
-	private void searchHelper(String searchTerm, ArrayList<Result> resultsList, HashMap<String, Result> resultsMap)
+	private void searchHelper(int searchTerm, ScoreAccumulator scores, IntUnaryOperator ids)
 	{
-		for(String path : index.get(searchTerm).keySet())
+		PostingList list = postings.get(searchTerm);
+		
+		for(int i = 0; i < list.size(); i++)
 		{
-			TreeSet<Integer> positions = index.get(searchTerm).get(path);
-			int occurences = positions.size();
+			int document = ids == null ? list.document(i) : ids.applyAsInt(list.document(i));
 			
-			if(resultsMap.containsKey(path))
-			{
-				resultsMap.get(path).update(occurences);
-			}
-			
-			else
+			if(document >= 0)
 			{
-				resultsMap.put(path, new Result(path, occurences, locations.get(path)));
-				resultsList.add(resultsMap.get(path));
+				scores.add(document, list.positions(i).size());
 			}
 		}
 	}
 	
+	/**
+	 * @return - the number of documents, which are numbered from 0 up to it
+	 */
+	int documentCount()
+	{
+		return documents.size();
+	}
+	
+	/**
+	 * @param document - the ID of a document
+	 * @return - the path of the document
+	 */
+	String documentPath(int document)
+	{
+		return documents.path(document);
+	}
+	
 	/**
 	 * Method to output an inverted index in JSON format
 	 * 
@@ -181,10 +368,22 @@ public class InvertedIndex {
 	public void toJSON(Path path) throws IOException {
 		try(BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8))
 		{
-			JSONWriter.indexNestedObject(index, writer, 0);
+			JSONWriter.indexNestedObject(this, writer, 0);
 		}
 	}
 	
+	/**
+	 * Method to write the inverted index to a binary segment file, which can be
+	 * opened later with {@link IndexSegment#open(Path)}
+	 * 
+	 * @param path - The file path we are writing to
+	 * @throws IOException
+	 */
+	public void toSegment(Path path) throws IOException
+	{
+		IndexSegment.write(terms, postings, documents, path);
+	}
+	
 	/**
 	 * Method to output a -locations inverted index object in JSON format
 	 * 
@@ -195,7 +394,7 @@ public class InvertedIndex {
 	{
 		try(BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8))
 		{
-			JSONWriter.fileInfoObject(locations, writer, 0);
+			JSONWriter.fileInfoObject(documents.toMap(), writer, 0);
 		}
 	}
 	
@@ -208,39 +407,103 @@ public class InvertedIndex {
 	 */
 	public Set<String> getWords()
 	{
-		return Collections.unmodifiableSet(index.keySet());
+		return terms.terms();
 	}
 	
 	/**
-	 * Method to return an unmodifiable Map containing the file locations
+	 * Method to return an unmodifiable, sorted Set containing the file locations of a word
 	 * 
 	 * @param word - the initial key we're using
-	 * @return - the unmodifiable map
+	 * @return - the unmodifiable set
 	 */
 	public Set<String> getLocations(String word)
 	{
-		if(index.containsKey(word))
+		int term = terms.lookup(word);
+		
+		if(term < 0)
 		{
-			return Collections.unmodifiableSet(index.get(word).keySet());
+			return Collections.emptySet();
 		}
-		else
+		
+		PostingList list = postings.get(term);
+		TreeSet<String> paths = new TreeSet<>();
+		
+		for(int i = 0; i < list.size(); i++)
 		{
-			return Collections.emptySet();
+			paths.add(documents.path(list.document(i)));
 		}
+		
+		return Collections.unmodifiableSet(paths);
 	}
 	
+	/**
+	 * Method to return an unmodifiable, sorted Set containing the positions of a word within a file.
+	 * Kept for existing callers; {@link #getPositionList(String, String)} avoids boxing every position.
+	 * 
+	 * @param word - the initial key we're using
+	 * @param location - the path we are searching
+	 * @return - the unmodifiable set
+	 */
 	public Set<Integer> getPositions(String word, String location)
 	{
-		if(index.containsKey(word) && index.get(word).containsKey(location))
+		PositionList positions = getPositionList(word, location);
+		
+		if(positions.size() == 0)
+		{
+			return Collections.emptySet();
+		}
+		
+		TreeSet<Integer> set = new TreeSet<>();
+		
+		for(int position : positions.toArray())
+		{
+			set.add(position);
+		}
+		
+		return Collections.unmodifiableSet(set);
+	}
+	
+	/**
+	 * Method to return a copy of the positions of a word within a file
+	 * 
+	 * @param word - the initial key we're using
+	 * @param location - the path we are searching
+	 * @return - the sorted positions, or an empty list if there are none
+	 */
+	public PositionList getPositionList(String word, String location)
+	{
+		PositionList positions = find(word, location);
+		
+		if(positions != null)
 		{
-			return Collections.unmodifiableSet(index.get(word).get(location));
+			return new PositionList(positions);
 		}
 		else
 		{
-			return Collections.emptySet();
+			return new PositionList();
 		}
 	}
 	
+	/**
+	 * Helper method that looks up the positions of a word within a file
+	 * 
+	 * @param word - the word we are looking for
+	 * @param path - the path itself
+	 * @return - the positions, or null if the word does not appear in the path
+	 */
+	private PositionList find(String word, String path)
+	{
+		int term = terms.lookup(word);
+		int document = documents.lookup(path);
+		
+		if(term < 0 || document < 0)
+		{
+			return null;
+		}
+		
+		return postings.get(term).get(document);
+	}
+	
 	/**
 	 * Boolean method to check if the inverted index contains a given word
 	 * 
@@ -249,7 +512,7 @@ public class InvertedIndex {
 	 */
 	public boolean containsWord(String word)
 	{
-		return index.containsKey(word);
+		return terms.lookup(word) >= 0;
 	}
 	
 	/**
@@ -260,16 +523,7 @@ public class InvertedIndex {
 	 */
 	public boolean containsPath(String word, String path)
 	{
-		if(containsWord(word))
-		{
-			return index.get(word).containsKey(path);
-		}
-
-		else
-		{
-			return false;
-		}
-			
+		return find(word, path) != null;
 	}
 	
 	/**
@@ -282,9 +536,11 @@ public class InvertedIndex {
 	 */
 	public boolean containsLocation(String word, String path, int position)
 	{
-		if(containsPath(word, path))
+		PositionList positions = find(word, path);
+		
+		if(positions != null)
 		{
-			return index.get(word).get(path).contains(position);
+			return positions.contains(position);
 		}
 		
 		else
@@ -294,13 +550,30 @@ public class InvertedIndex {
 			
 	}
 	
+	/**
+	 * Method to return the number of positions stored, which is the sum of the
+	 * word counts of every path
+	 * @return - the total number of positions
+	 */
+	long size()
+	{
+		long size = 0;
+		
+		for(int document = 0; document < documents.size(); document++)
+		{
+			size += documents.count(document);
+		}
+		
+		return size;
+	}
+	
 	/**
 	 * Method to return the size of the inverted index
 	 * @return number of entries in the index
 	 */
 	public int words()
 	{
-		return index.size();
+		return terms.size();
 	}
 	
 	/**
@@ -313,9 +586,11 @@ public class InvertedIndex {
 	 */
 	public int positions(String word, String locations)
 	{
-		if(containsPath(word, locations))
+		PositionList positions = find(word, locations);
+		
+		if(positions != null)
 		{
-			return index.get(word).get(locations).size();
+			return positions.size();
 		}
 		
 		else
@@ -331,7 +606,7 @@ public class InvertedIndex {
 	 */
 	public Set<String> getLocationPaths()
 	{
-		return Collections.unmodifiableSet(locations.keySet());
+		return Collections.unmodifiableSet(documents.toMap().keySet());
 	}
 	
 	/**
@@ -342,7 +617,8 @@ public class InvertedIndex {
 	 */
 	public int getLocationSize(String key)
 	{
-		return locations.get(key);
+		int document = documents.lookup(key);
+		return document < 0 ? 0 : documents.count(document);
 	}
 	
 	/**
@@ -350,7 +626,31 @@ public class InvertedIndex {
 	 */
 	public String toString()
 	{
-		return this.index.toString();
+		StringBuilder builder = new StringBuilder("{");
+		
+		for(String word : getWords())
+		{
+			if(builder.length() > 1)
+			{
+				builder.append(", ");
+			}
+			
+			builder.append(word).append("={");
+			
+			for(String path : getLocations(word))
+			{
+				if(builder.charAt(builder.length() - 1) != '{')
+				{
+					builder.append(", ");
+				}
+				
+				builder.append(path).append('=').append(getPositionList(word, path));
+			}
+			
+			builder.append('}');
+		}
+		
+		return builder.append('}').toString();
 	}
 	
 }
\ No newline at end of file
@@ -7,6 +7,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.TreeMap;
 import java.util.TreeSet;
@@ -127,6 +128,42 @@ public class JSONWriter {
 
 	}
 
+	/**
+	 * Writes a list of positions formatted as a pretty JSON array of numbers
+	 * using the provided {@link Writer} and indentation level.
+	 *
+	 * @param elements the positions to convert to JSON
+	 * @param writer   the writer to use
+	 * @param level    the initial indentation level
+	 * @throws IOException if the writer encounters any issues
+	 *
+	 * @see #asArray(TreeSet, Writer, int)
+	 */
+	public static void asArray(PositionList elements, Writer writer,
+			int level) throws IOException {
+
+		writer.write("[");
+		writer.write(System.lineSeparator());
+		
+		Iterator<Integer> iterator = elements.iterator();
+		
+		while(iterator.hasNext())
+		{
+			indent(level + 1, writer);
+			writer.write(iterator.next().toString());
+			
+			if(iterator.hasNext())
+			{
+				writer.write(',');
+			}
+			
+			writer.write(System.lineSeparator());
+		}
+		
+		indent(level, writer);
+		writer.write("]");
+	}
+
 	/**
 	 * Returns the map of elements formatted as a pretty JSON object.
 	 *
@@ -510,6 +547,77 @@ public class JSONWriter {
 		
 	}
 	
+	/**
+	 * Writes an inverted index as a nested pretty JSON object using the provided
+	 * {@link Writer} and indentation level, reading each word straight from the
+	 * index.
+	 *
+	 * @param index the inverted index to convert to JSON
+	 * @param writer   the writer to use
+	 * @param level    the initial indentation level
+	 * @throws IOException if the writer encounters any issues
+	 *
+	 * @see #asArray(PositionList, Writer, int)
+	 */
+	public static void indexNestedObject(InvertedIndex index, Writer writer, int level) throws IOException
+	{
+		//If it's empty
+		if(index.words() <= 0)
+		{
+			writer.write("{");
+			writer.write(System.lineSeparator());
+			writer.write("}");
+			return;
+		}
+		
+		writer.write("{");
+		writer.write(System.lineSeparator());
+		
+		Iterator<String> words = index.getWords().iterator();
+		
+		while(words.hasNext())
+		{
+			String word = words.next();
+			
+			//Format appropriately, leaving the comma off the last word
+			indent(level + 1, writer);
+			quote(word, writer);
+			writer.write(": {");
+			writer.write(System.lineSeparator());
+			
+			Iterator<String> paths = index.getLocations(word).iterator();
+			
+			while(paths.hasNext())
+			{
+				String path = paths.next();
+				
+				indent(level + 2, writer);
+				quote(path, writer);
+				writer.write(": ");
+				asArray(index.getPositionList(word, path), writer, level + 2);
+				
+				if(paths.hasNext())
+				{
+					writer.write(",");
+				}
+				
+				writer.write(System.lineSeparator());
+			}
+			
+			indent(level + 1, writer);
+			writer.write("}");
+			
+			if(words.hasNext())
+			{
+				writer.write(",");
+			}
+			
+			writer.write(System.lineSeparator());
+		}
+		
+		writer.write("}");
+	}
+	
 	/**
 	 * helper method for JSON writer
 	 * 
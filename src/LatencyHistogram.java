@@ -0,0 +1,165 @@
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A thread safe histogram of durations in nanoseconds. Durations are counted
+ * in buckets by powers of two, so recording is a couple of uncontended adds
+ * and percentiles are accurate to within a factor of two, which is enough to
+ * tell microseconds from milliseconds from seconds.
+ */
+public class LatencyHistogram {
+
+	/** Bucket i counts the durations below 2^i nanoseconds that are not in an earlier bucket */
+	private static final int BUCKETS = 64;
+
+	private final LongAdder[] buckets;
+	private final LongAdder total;
+	private final LongAccumulator max;
+
+	/**
+	 * Initializes an empty histogram
+	 */
+	public LatencyHistogram()
+	{
+		this.buckets = new LongAdder[BUCKETS];
+		this.total = new LongAdder();
+		this.max = new LongAccumulator(Math::max, 0);
+
+		for(int i = 0; i < BUCKETS; i++)
+		{
+			buckets[i] = new LongAdder();
+		}
+	}
+
+	/**
+	 * Records a single duration
+	 *
+	 * @param nanos - the duration in nanoseconds, where negative values count as zero
+	 */
+	public void record(long nanos)
+	{
+		nanos = Math.max(0, nanos);
+		buckets[Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos))].increment();
+		total.add(nanos);
+		max.accumulate(nanos);
+	}
+
+	/**
+	 * Returns the number of durations recorded
+	 *
+	 * @return - the count
+	 */
+	public long count()
+	{
+		long count = 0;
+
+		for(LongAdder bucket : buckets)
+		{
+			count += bucket.sum();
+		}
+
+		return count;
+	}
+
+	/**
+	 * Returns the sum of every duration recorded
+	 *
+	 * @return - the total in nanoseconds
+	 */
+	public long total()
+	{
+		return total.sum();
+	}
+
+	/**
+	 * Returns the mean duration
+	 *
+	 * @return - the mean in nanoseconds, or 0 if nothing was recorded
+	 */
+	public long mean()
+	{
+		long count = count();
+		return count == 0 ? 0 : total() / count;
+	}
+
+	/**
+	 * Returns the longest duration recorded
+	 *
+	 * @return - the maximum in nanoseconds
+	 */
+	public long max()
+	{
+		return max.get();
+	}
+
+	/**
+	 * Returns an upper bound of the given percentile of the durations
+	 *
+	 * @param percentile - the percentile, between 0 and 100
+	 * @return - the upper bound of the bucket holding that percentile, in nanoseconds
+	 */
+	public long percentile(double percentile)
+	{
+		long[] counts = new long[BUCKETS];
+		long count = 0;
+
+		for(int i = 0; i < BUCKETS; i++)
+		{
+			counts[i] = buckets[i].sum();
+			count += counts[i];
+		}
+
+		long rank = (long) Math.ceil(count * percentile / 100);
+		long seen = 0;
+
+		for(int i = 0; i < BUCKETS; i++)
+		{
+			seen += counts[i];
+
+			if(seen >= rank && counts[i] > 0)
+			{
+				return Math.min(max(), i == 0 ? 0 : (1L << i) - 1);
+			}
+		}
+
+		return max();
+	}
+
+	/**
+	 * Copies the histogram as it is now, so a report is not skewed by durations
+	 * recorded while it is being built
+	 *
+	 * @return - a new histogram with the same counts
+	 */
+	public LatencyHistogram copy()
+	{
+		LatencyHistogram copy = new LatencyHistogram();
+
+		for(int i = 0; i < BUCKETS; i++)
+		{
+			copy.buckets[i].add(buckets[i].sum());
+		}
+
+		copy.total.add(total.sum());
+		copy.max.accumulate(max.get());
+		return copy;
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format("count %d, mean %s, p50 %s, p99 %s, max %s", count(), format(mean()), format(percentile(50)),
+				format(percentile(99)), format(max()));
+	}
+
+	/**
+	 * Formats a duration for people to read
+	 *
+	 * @param nanos - the duration in nanoseconds
+	 * @return - the duration in milliseconds
+	 */
+	public static String format(long nanos)
+	{
+		return String.format("%.3fms", nanos / 1e6);
+	}
+}
@@ -36,6 +36,30 @@ public class LinkParser {
 		}
 	}
 
+	/**
+	 * Resolves the value of an href attribute against the URL of the page it
+	 * was found on, and cleans the result.
+	 *
+	 * @param base url of the page the link was found on
+	 * @param href value of the href attribute
+	 * @return cleaned absolute url, or null if it is malformed or not http(s)
+	 */
+	public static URL resolve(URL base, String href) {
+		try {
+			URL url = new URL(base, href);
+			String protocol = url.getProtocol();
+
+			if (protocol.equalsIgnoreCase("http") || protocol.equalsIgnoreCase("https")) {
+				return clean(url);
+			}
+		}
+		catch (MalformedURLException e) {
+			// not a link that can be followed
+		}
+
+		return null;
+	}
+
 	/**
 	 * Fetches the HTML (without any HTTP headers) for the provided URL. Will
 	 * return null if the link does not point to a HTML page.
@@ -0,0 +1,253 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * A thread safe inverted index served from a memory-mapped {@link IndexSegment}.
+ * The segment itself is never modified; anything added afterwards, for example
+ * by a crawl, is kept in memory and combined with the segment on every read.
+ */
+public class MappedInvertedIndex extends ThreadSafeInvertedIndex {
+
+	private final IndexSegment segment;
+
+	/**
+	 * Creates an index on top of an opened segment
+	 * 
+	 * @param segment - the read-only segment to serve
+	 */
+	public MappedInvertedIndex(IndexSegment segment)
+	{
+		super();
+		this.segment = segment;
+	}
+
+	/**
+	 * Method that searches for exact searches in both the segment and anything added since
+	 * 
+	 * @param queryWords - The words from the query file we are looking for
+	 * @return - An array list of type result
+	 */
+	@Override
+	public ArrayList<Result> exactSearch(Collection<String> queryWords)
+	{
+		ArrayList<Result> resultsList = combinedMatches(queryWords, true);
+		Collections.sort(resultsList);
+		return resultsList;
+	}
+
+	/**
+	 * Method that searches for partial searches in both the segment and anything added since
+	 * 
+	 * @param queryWords - A line of words from the query file we are looking for
+	 * @return - An array list of type result
+	 */
+	@Override
+	public ArrayList<Result> partialSearch(Collection<String> queryWords)
+	{
+		ArrayList<Result> resultsList = combinedMatches(queryWords, false);
+		Collections.sort(resultsList);
+		return resultsList;
+	}
+
+	/**
+	 * Method that searches both the segment and anything added since, but only
+	 * keeps the best results
+	 * 
+	 * @param queryWords - The words we are looking for
+	 * @param exact - true for an exact search, false for a partial search
+	 * @param limit - The maximum number of results to return
+	 * @return - The best results along with the total number of matches
+	 */
+	@Override
+	public SearchResults search(Collection<String> queryWords, boolean exact, int limit)
+	{
+		return SearchResults.select(combinedMatches(queryWords, exact), limit);
+	}
+
+	/**
+	 * Collects the results from the segment and from the in-memory index. The
+	 * in-memory index is read under a single read lock, so its matches and word
+	 * counts come from the same state.
+	 * 
+	 * @param queryWords - The words we are looking for
+	 * @param exact - true to match whole words, false to match words as prefixes
+	 * @return - the combined results, in no particular order
+	 */
+	private ArrayList<Result> combinedMatches(Collection<String> queryWords, boolean exact)
+	{
+		ArrayList<Result> mapped = segment.matches(queryWords, exact);
+		
+		lock.lockReadOnly();
+		try
+		{
+			return merge(mapped, super.matches(queryWords, exact));
+		}
+		finally
+		{
+			lock.unlockReadOnly();
+		}
+	}
+
+	/**
+	 * Combines the results from the segment with the results from the in-memory
+	 * index. The word count of every path is the sum of its counts on both
+	 * sides, even when only one side matched. Must be called holding the read lock.
+	 * 
+	 * @param mapped - the results found in the segment
+	 * @param added - the results found in the in-memory index
+	 * @return - the combined results, in no particular order
+	 */
+	private ArrayList<Result> merge(ArrayList<Result> mapped, ArrayList<Result> added)
+	{
+		HashMap<String, Integer> occurrences = new HashMap<>();
+		
+		for(Result result : mapped)
+		{
+			occurrences.merge(result.getPath(), result.getOccurences(), Integer::sum);
+		}
+		
+		for(Result result : added)
+		{
+			occurrences.merge(result.getPath(), result.getOccurences(), Integer::sum);
+		}
+		
+		ArrayList<Result> resultsList = new ArrayList<>(occurrences.size());
+		
+		for(Map.Entry<String, Integer> entry : occurrences.entrySet())
+		{
+			String path = entry.getKey();
+			resultsList.add(new Result(path, entry.getValue(), segment.getLocationSize(path) + super.getLocationSize(path)));
+		}
+		
+		return resultsList;
+	}
+
+	/**
+	 * Method to write the combined index to a binary segment file
+	 * 
+	 * @param path - The file path we are writing to
+	 * @throws IOException
+	 */
+	@Override
+	public void toSegment(Path path) throws IOException
+	{
+		InvertedIndex merged = new InvertedIndex();
+		segment.addTo(merged);
+		merged.addIndexes(this);
+		merged.toSegment(path);
+	}
+
+	/**
+	 * Method to output the combined -locations object in JSON format
+	 * 
+	 * @param path - The path we are writing to
+	 * @throws IOException
+	 */
+	@Override
+	public void fileInfoToJSON(Path path) throws IOException
+	{
+		TreeMap<String, Integer> locations = new TreeMap<>();
+		
+		for(String location : getLocationPaths())
+		{
+			locations.put(location, getLocationSize(location));
+		}
+		
+		try(BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8))
+		{
+			JSONWriter.fileInfoObject(locations, writer, 0);
+		}
+	}
+
+	@Override
+	public Set<String> getWords()
+	{
+		return union(segment.getWords(), super.getWords());
+	}
+
+	@Override
+	public Set<String> getLocations(String word)
+	{
+		return union(segment.getLocations(word), super.getLocations(word));
+	}
+
+	@Override
+	public PositionList getPositionList(String word, String location)
+	{
+		PositionList positions = segment.getPositionList(word, location);
+		positions.addAll(super.getPositionList(word, location));
+		return positions;
+	}
+
+	@Override
+	public boolean containsWord(String word)
+	{
+		return segment.containsWord(word) || super.containsWord(word);
+	}
+
+	@Override
+	public boolean containsPath(String word, String path)
+	{
+		return segment.containsPath(word, path) || super.containsPath(word, path);
+	}
+
+	@Override
+	public boolean containsLocation(String word, String path, int position)
+	{
+		return segment.containsLocation(word, path, position) || super.containsLocation(word, path, position);
+	}
+
+	@Override
+	public int words()
+	{
+		return super.words() == 0 ? segment.words() : getWords().size();
+	}
+
+	@Override
+	public int positions(String word, String locations)
+	{
+		return getPositionList(word, locations).size();
+	}
+
+	@Override
+	public int getLocationSize(String key)
+	{
+		return segment.getLocationSize(key) + super.getLocationSize(key);
+	}
+
+	@Override
+	public Set<String> getLocationPaths()
+	{
+		return union(segment.getLocationPaths(), super.getLocationPaths());
+	}
+
+	/**
+	 * Combines a set read from the segment with a set read from the in-memory index
+	 * 
+	 * @param mapped - the sorted set read from the segment
+	 * @param added - the sorted set read from the in-memory index
+	 * @return - an unmodifiable, sorted union of both sets
+	 */
+	private static Set<String> union(Set<String> mapped, Set<String> added)
+	{
+		if(added.isEmpty())
+		{
+			return mapped;
+		}
+		
+		TreeSet<String> combined = new TreeSet<>(mapped);
+		combined.addAll(added);
+		return Collections.unmodifiableSet(combined);
+	}
+}
@@ -0,0 +1,1148 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLParameters;
+
+/**
+ * Fetches pages without blocking a thread per fetch. A single thread waits on
+ * a {@link Selector} for every connection at once and moves each fetch along
+ * whenever its socket is ready, using an {@link SSLEngine} for https, so
+ * hundreds of fetches can be in flight while the thread mostly sleeps.
+ *
+ * <p>Every fetch uses its own connection and asks the server to close it
+ * afterwards. The response is collected in memory, up to
+ * {@link HTMLFetcher#MAX_BODY} bytes of body, and handed over as an
+ * {@link HttpResponse} whose body is decompressed when it is read, so the
+ * decompressing and decoding happen on whichever thread reads it rather than
+ * on the selector thread. Host names are resolved on a few threads of their
+ * own before a fetch reaches the selector thread. Redirects are not followed
+ * but handed over like any other response, so the caller can fetch the page
+ * they lead to from a thread of its own.
+ */
+public class NioFetcher implements Closeable {
+
+	/** The threads that resolve host names, so a slow lookup only holds up the fetches behind it */
+	private static final int RESOLVERS = 8;
+
+	/** How long a fetch may go without progress before it fails */
+	private static final long TIMEOUT = TimeUnit.SECONDS.toNanos(30);
+
+	private static final byte[] HEADER_END = { '\r', '\n', '\r', '\n' };
+
+	private final Selector selector;
+	private final Thread thread;
+	private final ExecutorService resolver;
+	private final int maxConnections;
+	private final long maxBytes;
+
+	/** Fetches waiting for a free connection, handed from callers to the selector thread */
+	private final ConcurrentLinkedQueue<Exchange> waiting;
+
+	/** The number of connections open, only used by the selector thread */
+	private int active;
+
+	private volatile boolean closed;
+
+	/**
+	 * Starts a fetcher with its selector thread
+	 *
+	 * @param maxConnections - the maximum number of connections open at once
+	 * @throws IOException
+	 */
+	public NioFetcher(int maxConnections) throws IOException
+	{
+		this(maxConnections, HTMLFetcher.MAX_BODY);
+	}
+
+	/**
+	 * Starts a fetcher with its selector thread
+	 *
+	 * @param maxConnections - the maximum number of connections open at once
+	 * @param maxBytes - the maximum number of bytes of a body collected
+	 * @throws IOException
+	 */
+	public NioFetcher(int maxConnections, long maxBytes) throws IOException
+	{
+		this.selector = Selector.open();
+		this.maxConnections = maxConnections;
+		this.maxBytes = maxBytes;
+		this.waiting = new ConcurrentLinkedQueue<>();
+		this.active = 0;
+		this.closed = false;
+		this.thread = new Thread(this::run, "nio-fetch");
+		this.thread.setDaemon(true);
+		this.thread.start();
+		this.resolver = Executors.newFixedThreadPool(RESOLVERS, runnable ->
+		{
+			Thread resolving = new Thread(runnable, "nio-resolve");
+			resolving.setDaemon(true);
+			return resolving;
+		});
+	}
+
+	/**
+	 * @return - the maximum number of connections open at once
+	 */
+	public int maxConnections()
+	{
+		return maxConnections;
+	}
+
+	/**
+	 * Starts fetching a page. The host name is resolved by one of the
+	 * resolver threads, so a slow lookup holds up neither the caller nor the
+	 * selector thread. A redirect completes the fetch with the redirect
+	 * response itself.
+	 *
+	 * @param url - the page to fetch
+	 * @return - the response, completed by the selector thread, or by a
+	 * 			 resolver thread if the host cannot be resolved
+	 */
+	public CompletableFuture<HttpResponse> fetch(URL url)
+	{
+		CompletableFuture<HttpResponse> future = new CompletableFuture<>();
+
+		try
+		{
+			resolver.execute(() -> submit(url, future));
+		}
+		catch(RejectedExecutionException e)
+		{
+			future.completeExceptionally(new IOException("Fetcher closed"));
+		}
+
+		return future;
+	}
+
+	/**
+	 * Resolves the host of a page and queues its fetch for the selector thread
+	 *
+	 * @param url - the page to fetch
+	 * @param future - the future to complete with the response
+	 */
+	private void submit(URL url, CompletableFuture<HttpResponse> future)
+	{
+		try
+		{
+			waiting.offer(new Exchange(url, future));
+		}
+		catch(IOException e)
+		{
+			future.completeExceptionally(e);
+			return;
+		}
+
+		if(closed)
+		{
+			failWaiting();
+		}
+
+		selector.wakeup();
+	}
+
+	/**
+	 * Runs the selector loop until the fetcher is closed
+	 */
+	private void run()
+	{
+		while(!closed)
+		{
+			try
+			{
+				startWaiting();
+				selector.select(TimeUnit.NANOSECONDS.toMillis(TIMEOUT) / 10);
+
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+
+				while(keys.hasNext())
+				{
+					SelectionKey key = keys.next();
+					keys.remove();
+					((Exchange) key.attachment()).step();
+				}
+
+				expire();
+			}
+			catch(IOException e)
+			{
+				System.err.println("Warning: The fetch selector failed: " + e);
+			}
+		}
+
+		for(SelectionKey key : selector.keys())
+		{
+			((Exchange) key.attachment()).fail(new IOException("Fetcher closed"));
+		}
+
+		failWaiting();
+
+		try
+		{
+			selector.close();
+		}
+		catch(IOException e)
+		{
+			// nothing is left to fetch
+		}
+	}
+
+	/**
+	 * Opens connections for waiting fetches while there are free ones
+	 */
+	private void startWaiting()
+	{
+		Exchange exchange;
+
+		while(active < maxConnections && (exchange = waiting.poll()) != null)
+		{
+			exchange.start();
+		}
+	}
+
+	/**
+	 * Fails the fetches that have gone too long without progress
+	 */
+	private void expire()
+	{
+		long now = System.nanoTime();
+
+		for(SelectionKey key : selector.keys())
+		{
+			Exchange exchange = (Exchange) key.attachment();
+
+			if(now - exchange.lastProgress > TIMEOUT)
+			{
+				exchange.fail(new SocketTimeoutException("No progress fetching " + exchange.url));
+			}
+		}
+	}
+
+	/**
+	 * Fails every fetch that has not started
+	 */
+	private void failWaiting()
+	{
+		Exchange exchange;
+
+		while((exchange = waiting.poll()) != null)
+		{
+			exchange.future.completeExceptionally(new IOException("Fetcher closed"));
+		}
+	}
+
+	/**
+	 * Stops the selector thread, failing every fetch still in flight
+	 */
+	@Override
+	public void close()
+	{
+		closed = true;
+		resolver.shutdown();
+		selector.wakeup();
+
+		try
+		{
+			thread.join();
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * The progress of a single fetch, only touched by the selector thread once
+	 * it has been queued
+	 */
+	private class Exchange
+	{
+		private final URL url;
+		private final CompletableFuture<HttpResponse> future;
+		private final InetSocketAddress address;
+		private final ByteBuffer request;
+
+		private SocketChannel channel;
+		private SelectionKey key;
+		private SSLEngine engine;
+
+		/** Encrypted bytes to send, in read mode, and received, in write mode */
+		private ByteBuffer netOut;
+		private ByteBuffer netIn;
+
+		/** Decrypted bytes received, in write mode */
+		private ByteBuffer appIn;
+
+		/** The response received so far */
+		private byte[] data;
+		private int size;
+
+		/** What the headers say about the body, once they have been received */
+		private Map<String, List<String>> headers;
+		private int headerEnd;
+		private long length;
+		private boolean chunked;
+
+		/** Where the size line of the next chunk not yet received in full starts */
+		private int nextChunk;
+
+		private boolean handshaking;
+		private long lastProgress;
+
+		/**
+		 * Prepares a fetch, resolving the host of the page
+		 *
+		 * @param url - the page to fetch
+		 * @param future - the future to complete with the response
+		 * @throws IOException if the host cannot be resolved
+		 */
+		public Exchange(URL url, CompletableFuture<HttpResponse> future) throws IOException
+		{
+			boolean https = url.getProtocol().equalsIgnoreCase("https");
+			int port = url.getPort() < 0 ? (https ? 443 : 80) : url.getPort();
+			String resource = url.getFile().isEmpty() ? "/" : url.getFile();
+
+			this.url = url;
+			this.future = future;
+			this.address = new InetSocketAddress(url.getHost(), port);
+			this.data = new byte[16 * 1024];
+			this.size = 0;
+			this.headerEnd = -1;
+
+			if(address.isUnresolved())
+			{
+				throw new IOException("Unable to resolve " + url.getHost());
+			}
+
+			String text = String.format("GET %s HTTP/1.1\r\nHost: %s\r\nConnection: close\r\nAccept-Encoding: gzip, deflate\r\n\r\n",
+					resource, url.getHost());
+			this.request = ByteBuffer.wrap(text.getBytes(StandardCharsets.ISO_8859_1));
+
+			if(https)
+			{
+				try
+				{
+					engine = SSLContext.getDefault().createSSLEngine(url.getHost(), port);
+				}
+				catch(NoSuchAlgorithmException e)
+				{
+					throw new IOException("TLS is not available", e);
+				}
+
+				SSLParameters parameters = engine.getSSLParameters();
+				parameters.setEndpointIdentificationAlgorithm("HTTPS");
+				engine.setSSLParameters(parameters);
+				engine.setUseClientMode(true);
+			}
+		}
+
+		/**
+		 * Opens the connection and registers it with the selector
+		 */
+		public void start()
+		{
+			lastProgress = System.nanoTime();
+
+			try
+			{
+				channel = SocketChannel.open();
+				active++;
+				channel.configureBlocking(false);
+
+				if(engine != null)
+				{
+					netOut = ByteBuffer.allocate(engine.getSession().getPacketBufferSize());
+					netOut.flip();
+					netIn = ByteBuffer.allocate(engine.getSession().getPacketBufferSize());
+					appIn = ByteBuffer.allocate(engine.getSession().getApplicationBufferSize());
+					engine.beginHandshake();
+					handshaking = true;
+				}
+				else
+				{
+					appIn = ByteBuffer.allocate(16 * 1024);
+				}
+
+				key = channel.register(selector, SelectionKey.OP_CONNECT, this);
+
+				if(channel.connect(address))
+				{
+					step();
+				}
+			}
+			catch(IOException e)
+			{
+				fail(e);
+			}
+		}
+
+		/**
+		 * Moves the fetch along as far as the socket allows, then waits for
+		 * whatever the socket has to be ready for next
+		 */
+		public void step()
+		{
+			try
+			{
+				if(channel.isConnectionPending() && !channel.finishConnect())
+				{
+					key.interestOps(SelectionKey.OP_CONNECT);
+					return;
+				}
+
+				if(handshaking && !handshake())
+				{
+					return;
+				}
+
+				if(!send())
+				{
+					return;
+				}
+
+				receive();
+			}
+			catch(IOException | RuntimeException e)
+			{
+				fail(e instanceof IOException ? (IOException) e : new IOException(e));
+			}
+		}
+
+		/**
+		 * Runs the TLS handshake as far as possible
+		 *
+		 * @return - true once the handshake is done
+		 * @throws IOException
+		 */
+		private boolean handshake() throws IOException
+		{
+			while(true)
+			{
+				HandshakeStatus status = engine.getHandshakeStatus();
+
+				switch(status)
+				{
+					case NEED_TASK:
+						runTasks();
+						break;
+
+					case NEED_WRAP:
+						if(!flush())
+						{
+							return false;
+						}
+
+						wrap(ByteBuffer.allocate(0));
+						break;
+
+					case NEED_UNWRAP:
+					case NEED_UNWRAP_AGAIN:
+						if(!flush())
+						{
+							return false;
+						}
+
+						if(!unwrap() && status == HandshakeStatus.NEED_UNWRAP && !fill())
+						{
+							return false;
+						}
+
+						break;
+
+					default:
+						if(!flush())
+						{
+							return false;
+						}
+
+						handshaking = false;
+						return true;
+				}
+			}
+		}
+
+		/**
+		 * Sends the request
+		 *
+		 * @return - true once all of it has been sent
+		 * @throws IOException
+		 */
+		private boolean send() throws IOException
+		{
+			if(engine == null)
+			{
+				if(request.hasRemaining())
+				{
+					progress(channel.write(request));
+				}
+
+				if(request.hasRemaining())
+				{
+					key.interestOps(SelectionKey.OP_WRITE);
+					return false;
+				}
+
+				return true;
+			}
+
+			while(request.hasRemaining())
+			{
+				if(!flush())
+				{
+					return false;
+				}
+
+				wrap(request);
+			}
+
+			return flush();
+		}
+
+		/**
+		 * Reads as much of the response as is available, finishing the fetch
+		 * at the end of the response
+		 *
+		 * @throws IOException
+		 */
+		private void receive() throws IOException
+		{
+			while(true)
+			{
+				boolean more;
+
+				if(engine == null)
+				{
+					int read = channel.read(appIn);
+
+					if(read < 0)
+					{
+						complete();
+						return;
+					}
+
+					progress(read);
+					more = read > 0;
+				}
+				else
+				{
+					more = unwrap();
+
+					if(engine.getHandshakeStatus() != HandshakeStatus.NOT_HANDSHAKING)
+					{
+						// session tickets and key updates can arrive after the handshake
+						handshaking = true;
+
+						if(!handshake())
+						{
+							return;
+						}
+					}
+
+					if(!more && !engine.isInboundDone() && fill())
+					{
+						continue;
+					}
+				}
+
+				append();
+
+				if(isComplete() || (engine != null && engine.isInboundDone()))
+				{
+					complete();
+					return;
+				}
+
+				if(!more)
+				{
+					key.interestOps(SelectionKey.OP_READ);
+					return;
+				}
+			}
+		}
+
+		/**
+		 * Moves the decrypted bytes received into the response
+		 */
+		private void append()
+		{
+			appIn.flip();
+			int count = appIn.remaining();
+
+			if(size + count > data.length)
+			{
+				data = Arrays.copyOf(data, Math.max(data.length * 2, size + count));
+			}
+
+			appIn.get(data, size, count);
+			appIn.clear();
+			size += count;
+		}
+
+		/**
+		 * Records that bytes were moved over the socket
+		 *
+		 * @param bytes - the number of bytes moved
+		 */
+		private void progress(int bytes)
+		{
+			if(bytes > 0)
+			{
+				lastProgress = System.nanoTime();
+			}
+		}
+
+		/**
+		 * Reads encrypted bytes from the socket
+		 *
+		 * @return - true if any were read
+		 * @throws IOException
+		 */
+		private boolean fill() throws IOException
+		{
+			if(!netIn.hasRemaining())
+			{
+				netIn = grow(netIn, engine.getSession().getPacketBufferSize());
+			}
+
+			int read = channel.read(netIn);
+
+			if(read < 0)
+			{
+				if(handshaking)
+				{
+					throw new EOFException("Connection closed during the TLS handshake");
+				}
+
+				try
+				{
+					engine.closeInbound();
+				}
+				catch(SSLException e)
+				{
+					// servers often close without a close_notify, and the response is framed by HTTP anyway
+				}
+
+				return false;
+			}
+
+			progress(read);
+
+			if(read == 0)
+			{
+				key.interestOps(SelectionKey.OP_READ);
+				return false;
+			}
+
+			return true;
+		}
+
+		/**
+		 * Decrypts the encrypted bytes received so far
+		 *
+		 * @return - true if anything was decrypted or the handshake moved on
+		 * @throws SSLException
+		 */
+		private boolean unwrap() throws SSLException
+		{
+			netIn.flip();
+
+			try
+			{
+				while(true)
+				{
+					SSLEngineResult result = engine.unwrap(netIn, appIn);
+
+					switch(result.getStatus())
+					{
+						case BUFFER_OVERFLOW:
+							appIn = grow(appIn, engine.getSession().getApplicationBufferSize());
+							continue;
+
+						case BUFFER_UNDERFLOW:
+							return false;
+
+						default:
+							return result.bytesConsumed() > 0 || result.bytesProduced() > 0 || result.getStatus() == SSLEngineResult.Status.CLOSED;
+					}
+				}
+			}
+			finally
+			{
+				netIn.compact();
+			}
+		}
+
+		/**
+		 * Encrypts bytes to be sent
+		 *
+		 * @param source - the bytes to encrypt
+		 * @throws SSLException
+		 */
+		private void wrap(ByteBuffer source) throws SSLException
+		{
+			netOut.compact();
+
+			try
+			{
+				while(true)
+				{
+					SSLEngineResult result = engine.wrap(source, netOut);
+
+					if(result.getStatus() != SSLEngineResult.Status.BUFFER_OVERFLOW)
+					{
+						return;
+					}
+
+					netOut.flip();
+					netOut = grow(netOut, engine.getSession().getPacketBufferSize());
+				}
+			}
+			finally
+			{
+				netOut.flip();
+			}
+		}
+
+		/**
+		 * Sends the encrypted bytes waiting to be sent
+		 *
+		 * @return - true once all of them have been sent
+		 * @throws IOException
+		 */
+		private boolean flush() throws IOException
+		{
+			if(netOut.hasRemaining())
+			{
+				progress(channel.write(netOut));
+			}
+
+			if(netOut.hasRemaining())
+			{
+				key.interestOps(SelectionKey.OP_WRITE);
+				return false;
+			}
+
+			return true;
+		}
+
+		/**
+		 * Runs the work the TLS engine needs done before it can go on
+		 */
+		private void runTasks()
+		{
+			Runnable task;
+
+			while((task = engine.getDelegatedTask()) != null)
+			{
+				task.run();
+			}
+		}
+
+		/**
+		 * Checks whether the response received so far is complete, or has
+		 * reached the maximum size
+		 *
+		 * @return - true if nothing more needs to be read
+		 */
+		private boolean isComplete()
+		{
+			if(headers == null && !readHeaders())
+			{
+				return false;
+			}
+
+			long body = size - headerEnd;
+
+			if(body >= maxBytes || body >= length)
+			{
+				return true;
+			}
+
+			// trailers after the last chunk are rare enough to wait for the server to close the connection
+			return chunked && readChunks();
+		}
+
+		/**
+		 * Parses the status line and headers once all of them have been received
+		 *
+		 * @return - true if the headers are complete
+		 */
+		private boolean readHeaders()
+		{
+			int end = indexOf(data, size, HEADER_END);
+
+			if(end < 0)
+			{
+				return false;
+			}
+
+			headerEnd = end + HEADER_END.length;
+			headers = parseHeaders(data, headerEnd);
+
+			int code = statusCode(headers);
+			String encoding = HttpsFetcher.header(headers, "Transfer-Encoding");
+			String contentLength = HttpsFetcher.header(headers, "Content-Length");
+
+			chunked = encoding != null && encoding.toLowerCase().contains("chunked");
+			nextChunk = headerEnd;
+			length = Long.MAX_VALUE;
+
+			if(code == 204 || code == 304 || (code >= 100 && code < 200))
+			{
+				length = 0;
+			}
+			else if(!chunked && contentLength != null)
+			{
+				try
+				{
+					length = Long.parseLong(contentLength.trim());
+				}
+				catch(NumberFormatException e)
+				{
+					// read until the connection is closed instead
+				}
+			}
+
+			return true;
+		}
+
+		/**
+		 * Walks the chunks of a chunked body that have been received in full,
+		 * remembering where the next one starts, until the last chunk with a
+		 * size of 0 and the trailers after it have been received
+		 *
+		 * @return - true if the body is complete
+		 */
+		private boolean readChunks()
+		{
+			while(true)
+			{
+				int lineEnd = indexOf(data, nextChunk, size, (byte) '\n');
+
+				if(lineEnd < 0)
+				{
+					return false;
+				}
+
+				String line = new String(data, nextChunk, lineEnd - nextChunk, StandardCharsets.ISO_8859_1).trim();
+				int extension = line.indexOf(';');
+				long chunk;
+
+				try
+				{
+					chunk = Long.parseLong(extension < 0 ? line : line.substring(0, extension).trim(), 16);
+				}
+				catch(NumberFormatException e)
+				{
+					// nothing after a malformed chunk line can be read, so the body ends there
+					return true;
+				}
+
+				if(chunk == 0)
+				{
+					// the trailers end with an empty line, which follows the size line right away if there are none
+					return indexOf(data, lineEnd - 1, size, HEADER_END) >= 0;
+				}
+
+				// the chunk and the line ending after it
+				long next = lineEnd + 1 + chunk + 2;
+
+				if(next > size)
+				{
+					return false;
+				}
+
+				nextChunk = (int) next;
+			}
+		}
+
+		/**
+		 * Ends the fetch with the response received
+		 */
+		private void complete()
+		{
+			close();
+
+			if(headers == null && !readHeaders())
+			{
+				future.completeExceptionally(new EOFException("Connection closed before the response of " + url));
+				return;
+			}
+
+			byte[] body;
+
+			if(chunked)
+			{
+				ByteArrayOutputStream dechunked = new ByteArrayOutputStream();
+				dechunk(data, headerEnd, size, dechunked);
+				body = dechunked.toByteArray();
+			}
+			else
+			{
+				long end = Math.min(size, headerEnd + Math.min(length, maxBytes));
+				body = Arrays.copyOfRange(data, headerEnd, (int) end);
+			}
+
+			try
+			{
+				future.complete(new HttpResponse(headers, HttpsFetcher.decode(headers, new ByteArrayInputStream(body), body.length == 0)));
+			}
+			catch(IOException e)
+			{
+				future.completeExceptionally(e);
+			}
+		}
+
+		/**
+		 * Ends the fetch with an error
+		 *
+		 * @param e - the error
+		 */
+		private void fail(IOException e)
+		{
+			close();
+			future.completeExceptionally(e);
+		}
+
+		/**
+		 * Closes the connection and frees its place for a waiting fetch
+		 */
+		private void close()
+		{
+			if(channel == null || !channel.isOpen())
+			{
+				return;
+			}
+
+			active--;
+
+			if(key != null)
+			{
+				key.cancel();
+			}
+
+			try
+			{
+				channel.close();
+			}
+			catch(IOException e)
+			{
+				// the response is complete or failed either way
+			}
+		}
+	}
+
+	/**
+	 * Parses the status line and headers at the start of a response
+	 *
+	 * @param bytes - the response
+	 * @param end - the index just past the empty line ending the headers
+	 * @return - the status line under the null key and the headers, as
+	 *         returned by {@link java.net.URLConnection#getHeaderFields()}
+	 */
+	private static Map<String, List<String>> parseHeaders(byte[] bytes, int end)
+	{
+		Map<String, List<String>> headers = new HashMap<>();
+		String[] lines = new String(bytes, 0, end, StandardCharsets.ISO_8859_1).split("\r?\n");
+
+		headers.put(null, Arrays.asList(lines[0]));
+
+		for(int i = 1; i < lines.length; i++)
+		{
+			String[] split = lines[i].split(":\\s*", 2);
+
+			if(split.length == 2)
+			{
+				headers.computeIfAbsent(split[0], name -> new ArrayList<>()).add(split[1].trim());
+			}
+		}
+
+		return headers;
+	}
+
+	/**
+	 * Returns the status code of a response
+	 *
+	 * @param headers - the status line and headers of the response
+	 * @return - the status code, or -1 if it cannot be determined
+	 */
+	private static int statusCode(Map<String, List<String>> headers)
+	{
+		try
+		{
+			return HTMLFetcher.getStatusCode(headers);
+		}
+		catch(RuntimeException e)
+		{
+			return -1;
+		}
+	}
+
+	/**
+	 * Removes the chunked transfer encoding from a body
+	 *
+	 * @param bytes - the response
+	 * @param start - the index where the body starts
+	 * @param end - the index just past the end of the response
+	 * @param out - receives the data of every chunk, the last one possibly cut off
+	 */
+	private static void dechunk(byte[] bytes, int start, int end, ByteArrayOutputStream out)
+	{
+		int i = start;
+
+		while(true)
+		{
+			int lineEnd = indexOf(bytes, i, end, (byte) '\n');
+
+			if(lineEnd < 0)
+			{
+				return;
+			}
+
+			String line = new String(bytes, i, lineEnd - i, StandardCharsets.ISO_8859_1).trim();
+			int extension = line.indexOf(';');
+			long size;
+
+			try
+			{
+				size = Long.parseLong(extension < 0 ? line : line.substring(0, extension).trim(), 16);
+			}
+			catch(NumberFormatException e)
+			{
+				return;
+			}
+
+			if(size == 0)
+			{
+				return;
+			}
+
+			i = lineEnd + 1;
+
+			if(end - i < size)
+			{
+				out.write(bytes, i, end - i);
+				return;
+			}
+
+			out.write(bytes, i, (int) size);
+			i += (int) size;
+
+			// skip the line ending after the data
+			int next = indexOf(bytes, i, end, (byte) '\n');
+
+			if(next < 0)
+			{
+				return;
+			}
+
+			i = next + 1;
+		}
+	}
+
+	/**
+	 * Finds a sequence of bytes
+	 *
+	 * @param bytes - the bytes to search
+	 * @param end - the index just past the last byte to search
+	 * @param target - the sequence to find
+	 * @return - the index of its first occurrence, or -1
+	 */
+	private static int indexOf(byte[] bytes, int end, byte[] target)
+	{
+		return indexOf(bytes, 0, end, target);
+	}
+
+	/**
+	 * Finds a sequence of bytes
+	 *
+	 * @param bytes - the bytes to search
+	 * @param from - the index to start from
+	 * @param end - the index just past the last byte to search
+	 * @param target - the sequence to find
+	 * @return - the index of its first occurrence at or after from, or -1
+	 */
+	private static int indexOf(byte[] bytes, int from, int end, byte[] target)
+	{
+		outer:
+		for(int i = from; i + target.length <= end; i++)
+		{
+			for(int j = 0; j < target.length; j++)
+			{
+				if(bytes[i + j] != target[j])
+				{
+					continue outer;
+				}
+			}
+
+			return i;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Finds a byte
+	 *
+	 * @param bytes - the bytes to search
+	 * @param from - the index to start from
+	 * @param end - the index just past the last byte to search
+	 * @param target - the byte to find
+	 * @return - the index of its first occurrence at or after from, or -1
+	 */
+	private static int indexOf(byte[] bytes, int from, int end, byte target)
+	{
+		for(int i = from; i < end; i++)
+		{
+			if(bytes[i] == target)
+			{
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Copies a buffer in write mode into a larger one
+	 *
+	 * @param buffer - the buffer
+	 * @param size - the least amount of extra room needed
+	 * @return - the larger buffer, in write mode
+	 */
+	private static ByteBuffer grow(ByteBuffer buffer, int size)
+	{
+		ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() + size);
+		buffer.flip();
+		larger.put(buffer);
+		return larger;
+	}
+}
@@ -0,0 +1,356 @@
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A sorted set of word positions stored as primitive ints. While a document is
+ * being indexed the positions are kept in a growable int array; once the
+ * document is finished the list is compacted into a byte array of
+ * variable-length encoded gaps between consecutive positions, which takes one
+ * or two bytes per position for most documents.
+ */
+public class PositionList implements Iterable<Integer> {
+
+	private int[] open;
+	private byte[] packed;
+	private int size;
+
+	/**
+	 * Initializes an empty, open position list
+	 */
+	public PositionList()
+	{
+		this.open = new int[2];
+		this.packed = null;
+		this.size = 0;
+	}
+
+	/**
+	 * Initializes a copy of another position list
+	 *
+	 * @param other - the list to copy
+	 */
+	public PositionList(PositionList other)
+	{
+		this.open = other.open == null ? null : Arrays.copyOf(other.open, other.size);
+		this.packed = other.packed == null ? null : Arrays.copyOf(other.packed, other.packed.length);
+		this.size = other.size;
+	}
+
+	/**
+	 * Adds a position to the list, keeping it sorted. Reopens the list if it has
+	 * already been compacted.
+	 *
+	 * @param position - the position to add
+	 * @return - true if the position was not already in the list
+	 */
+	public boolean add(int position)
+	{
+		if(packed != null)
+		{
+			open = unpack(size + 1);
+			packed = null;
+		}
+
+		// positions almost always arrive in increasing order
+		int index = size > 0 && open[size - 1] < position ? -(size + 1) : Arrays.binarySearch(open, 0, size, position);
+
+		if(index >= 0)
+		{
+			return false;
+		}
+
+		index = -(index + 1);
+
+		if(size == open.length)
+		{
+			open = Arrays.copyOf(open, Math.max(2, size * 2));
+		}
+
+		System.arraycopy(open, index, open, index + 1, size - index);
+		open[index] = position;
+		size++;
+		return true;
+	}
+
+	/**
+	 * Adds every position of another list to this one with a single linear
+	 * merge of the two sorted runs. The list stays compacted if it was
+	 * compacted before.
+	 *
+	 * @param other - the list to take positions from
+	 * @return - the number of positions that were not already in this list
+	 */
+	public int addAll(PositionList other)
+	{
+		int[] mine = toArray();
+		int[] theirs = other.toArray();
+		int[] merged = new int[mine.length + theirs.length];
+		int i = 0, j = 0, k = 0;
+
+		while(i < mine.length && j < theirs.length)
+		{
+			if(mine[i] < theirs[j])
+			{
+				merged[k++] = mine[i++];
+			}
+			else if(mine[i] > theirs[j])
+			{
+				merged[k++] = theirs[j++];
+			}
+			else
+			{
+				merged[k++] = mine[i++];
+				j++;
+			}
+		}
+
+		while(i < mine.length)
+		{
+			merged[k++] = mine[i++];
+		}
+
+		while(j < theirs.length)
+		{
+			merged[k++] = theirs[j++];
+		}
+
+		int added = k - size;
+		boolean compacted = isCompact();
+
+		open = merged;
+		packed = null;
+		size = k;
+
+		if(compacted)
+		{
+			compact();
+		}
+
+		return added;
+	}
+
+	/**
+	 * Checks whether the list contains the given position
+	 *
+	 * @param position - the position to look for
+	 * @return - true if the position is in the list
+	 */
+	public boolean contains(int position)
+	{
+		if(packed == null)
+		{
+			return Arrays.binarySearch(open, 0, size, position) >= 0;
+		}
+
+		PositionIterator iterator = new PositionIterator();
+
+		while(iterator.hasNext())
+		{
+			int next = iterator.nextInt();
+
+			if(next >= position)
+			{
+				return next == position;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Returns the number of positions in the list
+	 *
+	 * @return - the number of positions
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Checks whether the list has been compacted
+	 *
+	 * @return - true if the positions are stored as encoded gaps
+	 */
+	public boolean isCompact()
+	{
+		return packed != null;
+	}
+
+	/**
+	 * Encodes the positions as variable-length gaps and releases the open array.
+	 * Called once a document has been completely indexed.
+	 */
+	public void compact()
+	{
+		if(packed != null)
+		{
+			return;
+		}
+
+		packed = encode(open, size);
+		open = null;
+	}
+
+	/**
+	 * Returns the positions encoded as variable-length gaps, without changing
+	 * the state of the list. The returned array must not be modified.
+	 *
+	 * @return - the encoded positions
+	 */
+	byte[] encoded()
+	{
+		return packed != null ? packed : encode(open, size);
+	}
+
+	/**
+	 * Creates a compacted list from positions that were already encoded as
+	 * variable-length gaps
+	 *
+	 * @param packed - the encoded positions
+	 * @param size - the number of positions encoded
+	 * @return - the compacted list
+	 */
+	static PositionList decode(byte[] packed, int size)
+	{
+		PositionList list = new PositionList();
+		list.open = null;
+		list.packed = packed;
+		list.size = size;
+		return list;
+	}
+
+	/**
+	 * Encodes sorted positions as variable-length gaps, seven bits per byte with
+	 * the high bit set on every byte but the last of each gap
+	 *
+	 * @param positions - the sorted positions to encode
+	 * @param size - the number of positions to encode
+	 * @return - the encoded positions
+	 */
+	private static byte[] encode(int[] positions, int size)
+	{
+		byte[] buffer = new byte[size * 5];
+		int length = 0;
+		int previous = 0;
+
+		for(int i = 0; i < size; i++)
+		{
+			int gap = positions[i] - previous;
+			previous = positions[i];
+
+			while((gap & ~0x7F) != 0)
+			{
+				buffer[length++] = (byte) ((gap & 0x7F) | 0x80);
+				gap >>>= 7;
+			}
+
+			buffer[length++] = (byte) gap;
+		}
+
+		return Arrays.copyOf(buffer, length);
+	}
+
+	/**
+	 * Returns the positions as a sorted array
+	 *
+	 * @return - a new array containing every position
+	 */
+	public int[] toArray()
+	{
+		return packed == null ? Arrays.copyOf(open, size) : unpack(size);
+	}
+
+	/**
+	 * Decodes the compacted positions
+	 *
+	 * @param capacity - the length of the array to decode into
+	 * @return - the decoded positions
+	 */
+	private int[] unpack(int capacity)
+	{
+		int[] positions = new int[capacity];
+		PositionIterator iterator = new PositionIterator();
+
+		for(int i = 0; i < size; i++)
+		{
+			positions[i] = iterator.nextInt();
+		}
+
+		return positions;
+	}
+
+	@Override
+	public Iterator<Integer> iterator()
+	{
+		return new PositionIterator();
+	}
+
+	/**
+	 * Overriding default toString method, using the same format as a set of positions
+	 */
+	@Override
+	public String toString()
+	{
+		return Arrays.toString(toArray());
+	}
+
+	/**
+	 * Iterates through the positions in increasing order, decoding the gaps
+	 * one at a time if the list has been compacted
+	 */
+	private class PositionIterator implements Iterator<Integer>
+	{
+		private int index = 0;
+		private int offset = 0;
+		private int previous = 0;
+
+		@Override
+		public boolean hasNext()
+		{
+			return index < size;
+		}
+
+		@Override
+		public Integer next()
+		{
+			return nextInt();
+		}
+
+		/**
+		 * Returns the next position without boxing it
+		 *
+		 * @return - the next position
+		 */
+		public int nextInt()
+		{
+			if(index >= size)
+			{
+				throw new NoSuchElementException();
+			}
+
+			index++;
+
+			if(packed == null)
+			{
+				return open[index - 1];
+			}
+
+			int gap = 0;
+			int shift = 0;
+			byte current;
+
+			do
+			{
+				current = packed[offset++];
+				gap |= (current & 0x7F) << shift;
+				shift += 7;
+			}
+			while(current < 0);
+
+			previous += gap;
+			return previous;
+		}
+	}
+}
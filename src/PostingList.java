@@ -0,0 +1,228 @@
+import java.util.Arrays;
+
+/**
+ * The postings of a single term: the IDs of every document the term appears
+ * in, kept sorted, alongside the positions of the term within each document.
+ */
+public class PostingList {
+
+	private int[] documents;
+	private PositionList[] positions;
+	private int size;
+
+	/**
+	 * Initializes an empty posting list
+	 */
+	public PostingList()
+	{
+		this.documents = new int[2];
+		this.positions = new PositionList[2];
+		this.size = 0;
+	}
+
+	/**
+	 * Returns the positions stored for the given document
+	 *
+	 * @param document - the ID of the document
+	 * @return - the positions, or null if the term does not appear in the document
+	 */
+	public PositionList get(int document)
+	{
+		int index = Arrays.binarySearch(documents, 0, size, document);
+		return index < 0 ? null : positions[index];
+	}
+
+	/**
+	 * Returns the positions stored for the given document, adding an empty list
+	 * for it first if the term did not appear in the document yet
+	 *
+	 * @param document - the ID of the document
+	 * @return - the positions of the term within the document
+	 */
+	public PositionList getOrCreate(int document)
+	{
+		PositionList found = get(document);
+
+		if(found == null)
+		{
+			found = new PositionList();
+			put(document, found);
+		}
+
+		return found;
+	}
+
+	/**
+	 * Stores the given positions under the given document, which must not be in
+	 * the list yet
+	 *
+	 * @param document - the ID of the document
+	 * @param list - the positions of the term within the document
+	 */
+	public void put(int document, PositionList list)
+	{
+		int index = -(Arrays.binarySearch(documents, 0, size, document) + 1);
+
+		if(size == documents.length)
+		{
+			documents = Arrays.copyOf(documents, size * 2);
+			positions = Arrays.copyOf(positions, size * 2);
+		}
+
+		// documents are mostly added in increasing order, so this rarely shifts
+		System.arraycopy(documents, index, documents, index + 1, size - index);
+		System.arraycopy(positions, index, positions, index + 1, size - index);
+		documents[index] = document;
+		positions[index] = list;
+		size++;
+	}
+
+	/**
+	 * Adds every posting of another list to this one with a single linear
+	 * merge of the two sorted runs, translating its document IDs on the way.
+	 * The position lists of the other list are handed over rather than copied
+	 * when the document is new to this list.
+	 *
+	 * @param other - the list to take postings from
+	 * @param documentIds - the ID in this list of every document ID in the other
+	 */
+	public void addAll(PostingList other, int[] documentIds)
+	{
+		int[] theirs = new int[other.size];
+
+		for(int j = 0; j < other.size; j++)
+		{
+			theirs[j] = documentIds[other.documents[j]];
+
+			if(j > 0 && theirs[j] <= theirs[j - 1])
+			{
+				// the translation did not keep the order, so fall back to inserting one at a time
+				addEach(other, documentIds);
+				return;
+			}
+		}
+
+		if(size == 0 || theirs.length == 0 || theirs[0] > documents[size - 1])
+		{
+			append(other, theirs);
+			return;
+		}
+
+		int[] mergedDocuments = new int[size + theirs.length];
+		PositionList[] mergedPositions = new PositionList[size + theirs.length];
+		int i = 0, j = 0, k = 0;
+
+		while(i < size && j < theirs.length)
+		{
+			if(documents[i] < theirs[j])
+			{
+				mergedDocuments[k] = documents[i];
+				mergedPositions[k++] = positions[i++];
+			}
+			else if(documents[i] > theirs[j])
+			{
+				mergedDocuments[k] = theirs[j];
+				mergedPositions[k++] = other.positions[j++];
+			}
+			else
+			{
+				positions[i].addAll(other.positions[j++]);
+				mergedDocuments[k] = documents[i];
+				mergedPositions[k++] = positions[i++];
+			}
+		}
+
+		while(i < size)
+		{
+			mergedDocuments[k] = documents[i];
+			mergedPositions[k++] = positions[i++];
+		}
+
+		while(j < theirs.length)
+		{
+			mergedDocuments[k] = theirs[j];
+			mergedPositions[k++] = other.positions[j++];
+		}
+
+		documents = mergedDocuments;
+		positions = mergedPositions;
+		size = k;
+	}
+
+	/**
+	 * Appends the postings of another list whose translated IDs all come after
+	 * the last document of this one
+	 *
+	 * @param other - the list to take postings from
+	 * @param theirs - the translated IDs of the other list
+	 */
+	private void append(PostingList other, int[] theirs)
+	{
+		if(size + theirs.length > documents.length)
+		{
+			int capacity = Math.max(documents.length * 2, size + theirs.length);
+			documents = Arrays.copyOf(documents, capacity);
+			positions = Arrays.copyOf(positions, capacity);
+		}
+
+		System.arraycopy(theirs, 0, documents, size, theirs.length);
+		System.arraycopy(other.positions, 0, positions, size, theirs.length);
+		size += theirs.length;
+	}
+
+	/**
+	 * Adds the postings of another list one at a time
+	 *
+	 * @param other - the list to take postings from
+	 * @param documentIds - the ID in this list of every document ID in the other
+	 */
+	private void addEach(PostingList other, int[] documentIds)
+	{
+		for(int j = 0; j < other.size; j++)
+		{
+			int document = documentIds[other.documents[j]];
+			PositionList found = get(document);
+
+			if(found == null)
+			{
+				put(document, other.positions[j]);
+			}
+			else
+			{
+				found.addAll(other.positions[j]);
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of documents in the list
+	 *
+	 * @return - the number of documents
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Returns the document ID stored at the given index of the list
+	 *
+	 * @param index - an index between 0 and {@link #size()}
+	 * @return - the ID of the document
+	 */
+	public int document(int index)
+	{
+		return documents[index];
+	}
+
+	/**
+	 * Returns the positions stored at the given index of the list
+	 *
+	 * @param index - an index between 0 and {@link #size()}
+	 * @return - the positions of the term within that document
+	 */
+	public PositionList positions(int index)
+	{
+		return positions[index];
+	}
+}
@@ -0,0 +1,227 @@
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * A bounded, thread safe cache of search results keyed by query.
+ *
+ * <p>Every entry remembers the generation of the index it was computed from.
+ * A lookup made with a newer generation treats the entry as missing and drops
+ * it, so changes to the index never require flushing the whole cache.
+ *
+ * <p>Keys are spread over independently locked stripes. Each stripe evicts with
+ * a segmented LRU policy: new entries start in a small probation segment and
+ * are promoted to the protected segment on their second hit, so a burst of
+ * one-off queries cannot push the popular ones out.
+ *
+ * @param <V> - the type of the cached results
+ */
+public class QueryCache<V> {
+
+	private static final int STRIPES = 16;
+
+	private final Stripe<V>[] stripes;
+
+	/**
+	 * Initializes an empty cache
+	 *
+	 * @param capacity - the maximum number of entries to keep
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public QueryCache(int capacity)
+	{
+		this.stripes = new Stripe[STRIPES];
+
+		for(int i = 0; i < STRIPES; i++)
+		{
+			stripes[i] = new Stripe<>(Math.max(2, (capacity + STRIPES - 1) / STRIPES));
+		}
+	}
+
+	/**
+	 * Builds the cache key of a query
+	 *
+	 * @param queryWords - the words of the query
+	 * @param exact - true for an exact search, false for a partial search
+	 * @return - a key that is equal for every ordering of the same words
+	 */
+	public static String key(Collection<String> queryWords, boolean exact)
+	{
+		StringBuilder key = new StringBuilder(exact ? "exact:" : "partial:");
+
+		for(String word : new TreeSet<>(queryWords))
+		{
+			key.append(word).append(' ');
+		}
+
+		return key.toString();
+	}
+
+	/**
+	 * Returns the results cached for a query
+	 *
+	 * @param key - the query key
+	 * @param generation - the current generation of the index
+	 * @return - the cached results, or null if there are none for this generation
+	 */
+	public V get(String key, long generation)
+	{
+		return stripe(key).get(key, generation);
+	}
+
+	/**
+	 * Caches the results of a query
+	 *
+	 * @param key - the query key
+	 * @param generation - the generation of the index the results were computed from
+	 * @param value - the results
+	 */
+	public void put(String key, long generation, V value)
+	{
+		stripe(key).put(key, new Entry<>(generation, value));
+	}
+
+	/**
+	 * Returns the number of entries in the cache, including stale ones that
+	 * have not been looked up since the index changed
+	 *
+	 * @return - the number of entries
+	 */
+	public int size()
+	{
+		int size = 0;
+
+		for(Stripe<V> stripe : stripes)
+		{
+			size += stripe.size();
+		}
+
+		return size;
+	}
+
+	/**
+	 * Finds the stripe responsible for a key
+	 *
+	 * @param key - the query key
+	 * @return - the stripe holding that key
+	 */
+	private Stripe<V> stripe(String key)
+	{
+		int hash = key.hashCode();
+		return stripes[(hash ^ (hash >>> 16)) & (STRIPES - 1)];
+	}
+
+	/**
+	 * A cached value along with the generation it belongs to
+	 */
+	private static class Entry<V>
+	{
+		private final long generation;
+		private final V value;
+
+		private Entry(long generation, V value)
+		{
+			this.generation = generation;
+			this.value = value;
+		}
+	}
+
+	/**
+	 * One independently locked part of the cache
+	 */
+	private static class Stripe<V>
+	{
+		private final LinkedHashMap<String, Entry<V>> probation;
+		private final LinkedHashMap<String, Entry<V>> protect;
+		private final int probationCapacity;
+		private final int protectCapacity;
+
+		private Stripe(int capacity)
+		{
+			// iteration order is least recently used first
+			this.probation = new LinkedHashMap<>(16, 0.75f, true);
+			this.protect = new LinkedHashMap<>(16, 0.75f, true);
+			this.protectCapacity = Math.max(1, capacity * 4 / 5);
+			this.probationCapacity = Math.max(1, capacity - protectCapacity);
+		}
+
+		private synchronized V get(String key, long generation)
+		{
+			Entry<V> entry = protect.get(key);
+
+			if(entry == null)
+			{
+				entry = probation.remove(key);
+
+				if(entry == null)
+				{
+					return null;
+				}
+
+				if(entry.generation == generation)
+				{
+					promote(key, entry);
+				}
+			}
+
+			if(entry.generation != generation)
+			{
+				protect.remove(key);
+				return null;
+			}
+
+			return entry.value;
+		}
+
+		private synchronized void put(String key, Entry<V> entry)
+		{
+			if(protect.containsKey(key))
+			{
+				protect.put(key, entry);
+				return;
+			}
+
+			probation.put(key, entry);
+			trim(probation, probationCapacity);
+		}
+
+		private synchronized int size()
+		{
+			return probation.size() + protect.size();
+		}
+
+		/**
+		 * Moves an entry that was hit while on probation to the protected
+		 * segment, demoting the least recently used protected entry if needed
+		 */
+		private void promote(String key, Entry<V> entry)
+		{
+			protect.put(key, entry);
+
+			if(protect.size() > protectCapacity)
+			{
+				Iterator<Map.Entry<String, Entry<V>>> eldest = protect.entrySet().iterator();
+				Map.Entry<String, Entry<V>> demoted = eldest.next();
+				eldest.remove();
+				probation.put(demoted.getKey(), demoted.getValue());
+				trim(probation, probationCapacity);
+			}
+		}
+
+		/**
+		 * Evicts the least recently used entries of a segment past its capacity
+		 */
+		private static <V> void trim(LinkedHashMap<String, Entry<V>> segment, int capacity)
+		{
+			Iterator<Map.Entry<String, Entry<V>>> eldest = segment.entrySet().iterator();
+
+			while(segment.size() > capacity)
+			{
+				eldest.next();
+				eldest.remove();
+			}
+		}
+	}
+}
@@ -7,8 +7,6 @@ import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.TreeMap;
 import java.util.TreeSet;
-import opennlp.tools.stemmer.snowball.SnowballStemmer;
-import opennlp.tools.stemmer.snowball.SnowballStemmer.ALGORITHM;
 
 /**
  * Class that parses query files and calls
@@ -46,7 +44,6 @@ public class QueryFileParser implements QueryParserHelper
 		{
 	
 			String line;
-			SnowballStemmer stemmer = new SnowballStemmer(ALGORITHM.ENGLISH);
 			
 			while((line = reader.readLine()) != null)
 			{	
@@ -54,7 +51,7 @@ public class QueryFileParser implements QueryParserHelper
 				
 				for(String word : TextParser.parse(line))
 				{
-					queryWords.add(stemmer.stem(word).toString());
+					queryWords.add(WordStemmer.stem(word));
 				}
 				
 				if(queryWords.isEmpty())
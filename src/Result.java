@@ -1,3 +1,5 @@
+import java.util.function.IntFunction;
+
 
 /**
  * A class that stores a single search result and implements the
@@ -66,17 +68,35 @@ public class Result implements Comparable<Result> {
 	 */
 	public int compareTo(Result other)
 	{
-		int returnVal = Double.compare(other.score, this.score);
+		return compare(this.score, this.occurences, 0, other.score, other.occurences, 1, match -> match == 0 ? this.path : other.path);
+	}
+	
+	/**
+	 * The order results are sorted in: highest score first, then most
+	 * occurrences, then by path. A match is only asked for its path when the
+	 * rest is tied, as looking a path up can mean decoding it from a segment.
+	 * @param score - the score of the first match
+	 * @param occurences - the occurrences of the first match
+	 * @param match - the ID of the first match
+	 * @param otherScore - the score of the second match
+	 * @param otherOccurences - the occurrences of the second match
+	 * @param otherMatch - the ID of the second match
+	 * @param paths - looks up the path of a match by its ID
+	 * @return - a negative number if the first match ranks higher
+	 */
+	public static int compare(double score, int occurences, int match, double otherScore, int otherOccurences, int otherMatch, IntFunction<String> paths)
+	{
+		int returnVal = Double.compare(otherScore, score);
 		
 		if(returnVal == 0)
 		{
-			returnVal = Integer.compare(other.occurences, this.occurences);
+			returnVal = Integer.compare(otherOccurences, occurences);
 			if(returnVal == 0)
 			{
-				returnVal = this.path.compareTo(other.path);
+				returnVal = paths.apply(match).compareTo(paths.apply(otherMatch));
 			}
 		}
 		return returnVal;
-	}	
+	}
 
 }
\ No newline at end of file
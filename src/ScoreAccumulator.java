@@ -0,0 +1,159 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.function.IntBinaryOperator;
+import java.util.function.IntFunction;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Accumulates the number of query word occurrences of every matching document
+ * during a search. Counts are kept in an array indexed by document ID, along
+ * with the IDs of the documents touched so far, so adding a posting never
+ * hashes or allocates. {@link Result} objects are only created once the
+ * search is over, and only for the documents that are returned.
+ *
+ * Searches take their accumulator from {@link #forThread(int)}, which hands
+ * every thread the same one each time, so a search only clears the entries
+ * the previous search on that thread touched instead of allocating and
+ * zeroing an array as large as the index.
+ */
+public class ScoreAccumulator {
+
+	/** The accumulator of every searching thread */
+	private static final ThreadLocal<ScoreAccumulator> ACCUMULATORS = ThreadLocal.withInitial(() -> new ScoreAccumulator(0));
+
+	private int[] occurrences;
+	private int[] touched;
+	private int size;
+
+	/**
+	 * Initializes an accumulator for document IDs below the given bound
+	 *
+	 * @param documents - the number of documents that can match
+	 */
+	public ScoreAccumulator(int documents)
+	{
+		this.occurrences = new int[documents];
+		this.touched = new int[16];
+		this.size = 0;
+	}
+
+	/**
+	 * Returns the accumulator of the calling thread, emptied and able to hold
+	 * document IDs below the given bound. It is reused by the next search on
+	 * the same thread, so its results have to be collected before then.
+	 *
+	 * @param documents - the number of documents that can match
+	 * @return - the empty accumulator
+	 */
+	public static ScoreAccumulator forThread(int documents)
+	{
+		ScoreAccumulator scores = ACCUMULATORS.get();
+		scores.reset(documents);
+		return scores;
+	}
+
+	/**
+	 * Clears the entries touched since the last reset, growing the array if
+	 * it cannot hold every document
+	 *
+	 * @param documents - the number of documents that can match
+	 */
+	private void reset(int documents)
+	{
+		if(occurrences.length < documents)
+		{
+			occurrences = new int[Math.max(documents, occurrences.length + (occurrences.length >> 1))];
+		}
+		else
+		{
+			for(int i = 0; i < size; i++)
+			{
+				occurrences[touched[i]] = 0;
+			}
+		}
+
+		size = 0;
+	}
+
+	/**
+	 * Adds the occurrences of a query word within a document
+	 *
+	 * @param document - the ID of the document
+	 * @param count - the number of times the word appears in the document
+	 */
+	public void add(int document, int count)
+	{
+		if(occurrences[document] == 0)
+		{
+			if(size == touched.length)
+			{
+				touched = Arrays.copyOf(touched, size * 2);
+			}
+
+			touched[size++] = document;
+		}
+
+		occurrences[document] += count;
+	}
+
+	/**
+	 * Returns the number of documents that matched
+	 *
+	 * @return - the number of matching documents
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Creates a result for every matching document, in no particular order
+	 *
+	 * @param paths - looks up the path of a document ID
+	 * @param counts - looks up the word count of a document ID
+	 * @return - an unsorted array list of type results
+	 */
+	public ArrayList<Result> results(IntFunction<String> paths, IntUnaryOperator counts)
+	{
+		ArrayList<Result> resultsList = new ArrayList<>(size);
+
+		for(int i = 0; i < size; i++)
+		{
+			int document = touched[i];
+			resultsList.add(new Result(paths.apply(document), occurrences[document], counts.applyAsInt(document)));
+		}
+
+		return resultsList;
+	}
+
+	/**
+	 * Selects the best matching documents with {@link SearchResults#select(int, int, IntBinaryOperator, IntFunction)},
+	 * comparing document IDs by the same rules {@link Result} sorts by, and
+	 * only creates results for the documents kept
+	 *
+	 * @param limit - the maximum number of results to return
+	 * @param paths - looks up the path of a document ID
+	 * @param counts - looks up the word count of a document ID
+	 * @return - the best results along with the total number of matches
+	 */
+	public SearchResults select(int limit, IntFunction<String> paths, IntUnaryOperator counts)
+	{
+		return SearchResults.select(size, limit, (a, b) -> compare(touched[a], touched[b], paths, counts),
+				match -> new Result(paths.apply(touched[match]), occurrences[touched[match]], counts.applyAsInt(touched[match])));
+	}
+
+	/**
+	 * Compares two matching documents in the order results are sorted
+	 *
+	 * @param a - the ID of the first document
+	 * @param b - the ID of the second document
+	 * @param paths - looks up the path of a document ID
+	 * @param counts - looks up the word count of a document ID
+	 * @return - a negative number if the first document ranks higher
+	 */
+	private int compare(int a, int b, IntFunction<String> paths, IntUnaryOperator counts)
+	{
+		return Result.compare((double) occurrences[a] / (double) counts.applyAsInt(a), occurrences[a], a,
+				(double) occurrences[b] / (double) counts.applyAsInt(b), occurrences[b], b, paths);
+	}
+}
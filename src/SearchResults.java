@@ -0,0 +1,158 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.function.IntBinaryOperator;
+import java.util.function.IntFunction;
+
+/**
+ * The best results of a single search, in sorted order, along with the total
+ * number of documents that matched the search
+ */
+public class SearchResults {
+
+	private final ArrayList<Result> results;
+	private final int total;
+
+	/**
+	 * Constructor, stores the results that were kept and the number of matches
+	 * @param results - the best results, already sorted
+	 * @param total - the number of documents that matched
+	 */
+	public SearchResults(ArrayList<Result> results, int total)
+	{
+		this.results = results;
+		this.total = total;
+	}
+
+	/**
+	 * Selects the best results out of every match using a heap bounded to the
+	 * number of results wanted, so only those results are ever sorted
+	 *
+	 * @param matches - every result that matched the search, in any order
+	 * @param limit - the maximum number of results to keep
+	 * @return - the best results and the number of matches
+	 */
+	public static SearchResults select(Collection<Result> matches, int limit)
+	{
+		Result[] results = matches.toArray(new Result[0]);
+		return select(results.length, limit, (a, b) -> results[a].compareTo(results[b]), match -> results[match]);
+	}
+
+	/**
+	 * Selects the best of a number of matches known only by their position,
+	 * keeping the positions of the best ones so far in a heap bounded to the
+	 * limit with the worst of them at its head. Every search picks its best
+	 * results here, so they are ranked the same way however they were found.
+	 *
+	 * @param matches - the number of matches, at positions 0 up to it
+	 * @param limit - the maximum number of results to keep
+	 * @param compare - compares two matches by position in the order results are sorted
+	 * @param result - creates the result of a match kept
+	 * @return - the best results and the number of matches
+	 */
+	public static SearchResults select(int matches, int limit, IntBinaryOperator compare, IntFunction<Result> result)
+	{
+		int[] heap = new int[Math.max(0, Math.min(limit, matches))];
+		int kept = 0;
+
+		for(int match = 0; match < matches; match++)
+		{
+			if(kept < heap.length)
+			{
+				heap[kept] = match;
+				siftUp(heap, kept++, compare);
+			}
+			else if(kept > 0 && compare.applyAsInt(match, heap[0]) < 0)
+			{
+				heap[0] = match;
+				siftDown(heap, kept, compare);
+			}
+		}
+
+		ArrayList<Result> best = new ArrayList<>(kept);
+
+		for(int i = 0; i < kept; i++)
+		{
+			best.add(result.apply(heap[i]));
+		}
+
+		Collections.sort(best);
+		return new SearchResults(best, matches);
+	}
+
+	/**
+	 * Moves a newly added match up the heap until its parent ranks lower
+	 */
+	private static void siftUp(int[] heap, int index, IntBinaryOperator compare)
+	{
+		int match = heap[index];
+
+		while(index > 0)
+		{
+			int parent = (index - 1) >>> 1;
+
+			if(compare.applyAsInt(match, heap[parent]) <= 0)
+			{
+				break;
+			}
+
+			heap[index] = heap[parent];
+			index = parent;
+		}
+
+		heap[index] = match;
+	}
+
+	/**
+	 * Moves the match at the head of the heap down until both children rank
+	 * higher, keeping the lowest ranked match at the head
+	 */
+	private static void siftDown(int[] heap, int kept, IntBinaryOperator compare)
+	{
+		int match = heap[0];
+		int index = 0;
+
+		while(true)
+		{
+			int child = 2 * index + 1;
+
+			if(child >= kept)
+			{
+				break;
+			}
+
+			if(child + 1 < kept && compare.applyAsInt(heap[child + 1], heap[child]) > 0)
+			{
+				child++;
+			}
+
+			if(compare.applyAsInt(match, heap[child]) >= 0)
+			{
+				break;
+			}
+
+			heap[index] = heap[child];
+			index = child;
+		}
+
+		heap[index] = match;
+	}
+
+	/**
+	 * Getter method for the results that were kept
+	 * @return - the best results, in sorted order
+	 */
+	public ArrayList<Result> getResults()
+	{
+		return this.results;
+	}
+
+	/**
+	 * Getter method for the number of documents that matched
+	 * @return - the total number of matches, including those not kept
+	 */
+	public int getTotal()
+	{
+		return this.total;
+	}
+}
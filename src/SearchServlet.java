@@ -18,6 +18,8 @@ import org.apache.commons.text.StringEscapeUtils;
 @SuppressWarnings("serial")
 public class SearchServlet extends HttpServlet {
 	private static final String TITLE = "Search";
+	/** The number of results shown for a single search */
+	static final int RESULTS_SHOWN = 50;
 	private final ThreadSafeInvertedIndex index;
 	private static ConcurrentLinkedQueue<String> history;
 	
@@ -190,7 +192,8 @@ public class SearchServlet extends HttpServlet {
 		}
 		
 		final long startTime = System.currentTimeMillis();
-		ArrayList<Result> resultList = index.partialSearch(searchWords);
+		SearchResults results = index.search(searchWords, false, RESULTS_SHOWN);
+		ArrayList<Result> resultList = results.getResults();
 
 			
 		if(resultList.isEmpty())
@@ -211,7 +214,7 @@ public class SearchServlet extends HttpServlet {
 		final long endTime = System.currentTimeMillis();
 		final long total = endTime - startTime;
 		
-		out.printf("<h2>Total number of results: %d found in %ds</h2>%n", resultList.size(), total);
+		out.printf("<h2>Total number of results: %d found in %ds</h2>%n", results.getTotal(), total);
 		out.printf("</div>%n");
 		out.printf("</section>%n");
 		
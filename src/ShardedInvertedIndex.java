@@ -0,0 +1,672 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * A thread safe inverted index that divides its words between several shards
+ * by hash, each an inverted index guarded by its own lock. Adding words to
+ * one shard never blocks searches or adds on the other shards.
+ *
+ * <p>The word count of every document is kept apart from the shards, in a
+ * document table with a lock of its own that also numbers the documents for
+ * searching. A merge puts its parts into one shard at a time, holding only
+ * that shard's lock, and publishes the word counts of its documents once
+ * every part is in. A search reads one shard at a time under that shard's
+ * lock while holding the document table for reading, and leaves out every
+ * document whose count has not been published yet, so a document only shows
+ * up in results once all of it can be found. Neither ever waits on a shard
+ * while holding another one.
+ */
+public class ShardedInvertedIndex extends ThreadSafeInvertedIndex {
+
+	private final InvertedIndex[] shards;
+	private final ReadWriteLock[] locks;
+
+	/** The ID in the document table of every document ID of each shard, guarded by the lock of the shard */
+	private final int[][] documentIds;
+	private final int[] mappedDocuments;
+
+	/** Every document of every shard, with the word counts published so far */
+	private final DocumentTable documents;
+	private final ReadWriteLock documentsLock;
+
+	/**
+	 * Initializes an empty index with the given number of shards
+	 *
+	 * @param shards - the number of shards to divide words between
+	 */
+	public ShardedInvertedIndex(int shards)
+	{
+		super();
+		this.shards = new InvertedIndex[Math.max(1, shards)];
+		this.locks = new ReadWriteLock[this.shards.length];
+		this.documentIds = new int[this.shards.length][];
+		this.mappedDocuments = new int[this.shards.length];
+		this.documents = new DocumentTable();
+		this.documentsLock = new ReadWriteLock();
+
+		for(int i = 0; i < this.shards.length; i++)
+		{
+			this.shards[i] = new InvertedIndex();
+			this.locks[i] = new ReadWriteLock();
+			this.documentIds[i] = new int[16];
+		}
+	}
+
+	/**
+	 * Returns the shard holding a word
+	 *
+	 * @param word - the word
+	 * @return - the index of the shard
+	 */
+	private int shard(String word)
+	{
+		return Math.floorMod(word.hashCode(), shards.length);
+	}
+
+	/**
+	 * Thread safe method to add a given word, path, and location of occurrences
+	 * into the shard holding the word
+	 *
+	 * @param word - The word we're storing
+	 * @param path - The file path we are iterating through
+	 * @param occurences - The locations of where the words appear in the file
+	 * @return - true if the index is changed as a result of a call to this function
+	 */
+	@Override
+	public boolean add(String word, String path, int occurrences)
+	{
+		HashMap<String, Integer> ids = register(Collections.singleton(path));
+		int shard = shard(word);
+		boolean success;
+
+		locks[shard].lockReadWrite();
+		try
+		{
+			success = shards[shard].add(word, path, occurrences);
+			mapDocuments(shard, ids);
+		}
+		finally
+		{
+			locks[shard].unlockReadWrite();
+		}
+
+		if(success)
+		{
+			publish(ids, Collections.singletonMap(path, 1));
+		}
+
+		return success;
+	}
+
+	/**
+	 * Thread safe method to compact every position list that was added to since the last call
+	 */
+	@Override
+	public void compact()
+	{
+		for(int shard = 0; shard < shards.length; shard++)
+		{
+			locks[shard].lockReadWrite();
+			try
+			{
+				shards[shard].compact();
+			}
+			finally
+			{
+				locks[shard].unlockReadWrite();
+			}
+		}
+	}
+
+	/**
+	 * Method to add all information in one given inverted index to this one. The
+	 * other index is split by shard first, and then each part is merged while
+	 * holding only the lock of its own shard. The word counts of the documents
+	 * are published once every part is in.
+	 *
+	 * @param other - The index we are taking information from
+	 */
+	@Override
+	public void addIndexes(InvertedIndex other)
+	{
+		HashMap<String, Integer> counts = new HashMap<>();
+
+		for(String location : other.getLocationPaths())
+		{
+			counts.put(location, other.getLocationSize(location));
+		}
+
+		HashMap<String, Integer> ids = register(counts.keySet());
+		InvertedIndex[] parts = other.split(this::shard, shards.length);
+
+		for(int shard = 0; shard < shards.length; shard++)
+		{
+			if(parts[shard].words() == 0)
+			{
+				continue;
+			}
+
+			locks[shard].lockReadWrite();
+			try
+			{
+				shards[shard].addIndexes(parts[shard]);
+				mapDocuments(shard, ids);
+			}
+			finally
+			{
+				locks[shard].unlockReadWrite();
+			}
+		}
+
+		publish(ids, counts);
+	}
+
+	/**
+	 * Gives every document an ID in the document table, without publishing a word count for it
+	 *
+	 * @param paths - the documents
+	 * @return - the ID of every document
+	 */
+	private HashMap<String, Integer> register(Collection<String> paths)
+	{
+		HashMap<String, Integer> ids = new HashMap<>();
+
+		documentsLock.lockReadWrite();
+		try
+		{
+			for(String path : paths)
+			{
+				ids.put(path, documents.add(path));
+			}
+		}
+		finally
+		{
+			documentsLock.unlockReadWrite();
+		}
+
+		return ids;
+	}
+
+	/**
+	 * Records the ID in the document table of every document a merge added to
+	 * a shard, which are numbered after the documents it already had. Must be
+	 * called with the write lock of the shard held.
+	 *
+	 * @param shard - the shard
+	 * @param ids - the IDs of the documents of the merge
+	 */
+	private void mapDocuments(int shard, HashMap<String, Integer> ids)
+	{
+		int[] mapped = documentIds[shard];
+		int count = shards[shard].documentCount();
+
+		if(count > mapped.length)
+		{
+			mapped = Arrays.copyOf(mapped, Math.max(count, mapped.length * 2));
+			documentIds[shard] = mapped;
+		}
+
+		for(int document = mappedDocuments[shard]; document < count; document++)
+		{
+			mapped[document] = ids.get(shards[shard].documentPath(document));
+		}
+
+		mappedDocuments[shard] = count;
+	}
+
+	/**
+	 * Adds the word counts of a merge to the document table, making its documents visible to searches
+	 *
+	 * @param ids - the IDs of the documents
+	 * @param counts - the words added to every document
+	 */
+	private void publish(HashMap<String, Integer> ids, Map<String, Integer> counts)
+	{
+		documentsLock.lockReadWrite();
+		try
+		{
+			for(Map.Entry<String, Integer> entry : counts.entrySet())
+			{
+				documents.increment(ids.get(entry.getKey()), entry.getValue());
+			}
+		}
+		finally
+		{
+			documentsLock.unlockReadWrite();
+		}
+	}
+
+	/**
+	 * Thread safe method that searches for exact searches between query words and words within the inverted index
+	 *
+	 * @param queryWords - The words from the query file we are looking for
+	 * @return - An array list of type result
+	 */
+	@Override
+	public ArrayList<Result> exactSearch(Collection<String> queryWords)
+	{
+		ArrayList<Result> resultsList = matches(queryWords, true);
+		Collections.sort(resultsList);
+		return resultsList;
+	}
+
+	/**
+	 * Thread safe method that searches for partial searches between query words and words within the inverted index
+	 *
+	 * @param queryWords - A line of words from the query file we are looking for
+	 * @return - An array list of type result
+	 */
+	@Override
+	public ArrayList<Result> partialSearch(Collection<String> queryWords)
+	{
+		ArrayList<Result> resultsList = matches(queryWords, false);
+		Collections.sort(resultsList);
+		return resultsList;
+	}
+
+	/**
+	 * Thread safe method that searches the inverted index but only keeps the best results
+	 *
+	 * @param queryWords - The words we are looking for
+	 * @param exact - true for an exact search, false for a partial search
+	 * @param limit - The maximum number of results to return
+	 * @return - The best results along with the total number of matches
+	 */
+	@Override
+	public SearchResults search(Collection<String> queryWords, boolean exact, int limit)
+	{
+		documentsLock.lockReadOnly();
+		try
+		{
+			return accumulate(queryWords, exact).select(limit, documents::path, documents::count);
+		}
+		finally
+		{
+			documentsLock.unlockReadOnly();
+		}
+	}
+
+	/**
+	 * Collects a result for every document matching the query words, in no
+	 * particular order
+	 *
+	 * @param queryWords - The words we are looking for
+	 * @param exact - true to match whole words, false to match words as prefixes
+	 * @return - An unsorted array list of type results
+	 */
+	@Override
+	ArrayList<Result> matches(Collection<String> queryWords, boolean exact)
+	{
+		documentsLock.lockReadOnly();
+		try
+		{
+			return accumulate(queryWords, exact).results(documents::path, documents::count);
+		}
+		finally
+		{
+			documentsLock.unlockReadOnly();
+		}
+	}
+
+	/**
+	 * Adds up the occurrences of the query words found in every shard under
+	 * the IDs of the document table, reading one shard at a time. Must be
+	 * called with the document table read locked.
+	 *
+	 * @param queryWords - The words we are looking for
+	 * @param exact - true to match whole words, false to match words as prefixes
+	 * @return - The occurrences of the query words by document ID
+	 */
+	private ScoreAccumulator accumulate(Collection<String> queryWords, boolean exact)
+	{
+		ScoreAccumulator scores = ScoreAccumulator.forThread(documents.size());
+
+		for(int shard = 0; shard < shards.length; shard++)
+		{
+			Collection<String> words = queryWords;
+
+			if(exact)
+			{
+				// an exact word can only be in its own shard
+				ArrayList<String> own = new ArrayList<>();
+
+				for(String word : queryWords)
+				{
+					if(shard(word) == shard)
+					{
+						own.add(word);
+					}
+				}
+
+				if(own.isEmpty())
+				{
+					continue;
+				}
+
+				words = own;
+			}
+
+			locks[shard].lockReadOnly();
+			try
+			{
+				int[] mapped = documentIds[shard];
+
+				// documents whose merge has not been published yet are left out
+				shards[shard].accumulate(words, exact, scores, document -> documents.count(mapped[document]) > 0 ? mapped[document] : -1);
+			}
+			finally
+			{
+				locks[shard].unlockReadOnly();
+			}
+		}
+
+		return scores;
+	}
+
+	/**
+	 * Method to write the index to a binary segment file. Every shard is locked
+	 * while the shards are combined and written, so a merge still putting its
+	 * parts in may be written only in part.
+	 *
+	 * @param path - The file path we are writing to
+	 * @throws IOException
+	 */
+	@Override
+	public void toSegment(Path path) throws IOException
+	{
+		for(ReadWriteLock lock : locks)
+		{
+			lock.lockReadWrite();
+		}
+
+		try
+		{
+			InvertedIndex merged = new InvertedIndex();
+
+			for(InvertedIndex shard : shards)
+			{
+				merged.addIndexes(shard);
+			}
+
+			merged.toSegment(path);
+		}
+		finally
+		{
+			for(ReadWriteLock lock : locks)
+			{
+				lock.unlockReadWrite();
+			}
+		}
+	}
+
+	/**
+	 * Method to output the -locations object in JSON format, with the word
+	 * counts published in the document table
+	 *
+	 * @param path - The path we are writing to
+	 * @throws IOException
+	 */
+	@Override
+	public void fileInfoToJSON(Path path) throws IOException
+	{
+		TreeMap<String, Integer> counts;
+
+		documentsLock.lockReadOnly();
+		try
+		{
+			counts = documents.toMap();
+		}
+		finally
+		{
+			documentsLock.unlockReadOnly();
+		}
+
+		// documents registered by a merge that has not been published have no words yet
+		counts.values().removeIf(count -> count == 0);
+
+		try(BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8))
+		{
+			JSONWriter.fileInfoObject(counts, writer, 0);
+		}
+	}
+
+	/**
+	 * Thread safe method to return a sorted set of the words of every shard
+	 *
+	 * @return - the unmodifiable set
+	 */
+	@Override
+	public Set<String> getWords()
+	{
+		TreeSet<String> words = new TreeSet<>();
+
+		for(int shard = 0; shard < shards.length; shard++)
+		{
+			locks[shard].lockReadOnly();
+			try
+			{
+				words.addAll(shards[shard].getWords());
+			}
+			finally
+			{
+				locks[shard].unlockReadOnly();
+			}
+		}
+
+		return Collections.unmodifiableSet(words);
+	}
+
+	/**
+	 * Thread safe method to return the locations of a word
+	 *
+	 * @param word - the initial key we're using
+	 * @return - the unmodifiable set
+	 */
+	@Override
+	public Set<String> getLocations(String word)
+	{
+		int shard = shard(word);
+		locks[shard].lockReadOnly();
+		try
+		{
+			return shards[shard].getLocations(word);
+		}
+		finally
+		{
+			locks[shard].unlockReadOnly();
+		}
+	}
+
+	/**
+	 * Thread safe method to return a copy of the positions of a word within a file
+	 *
+	 * @param word - the initial key we're using
+	 * @param location - the path we are searching
+	 * @return - the sorted positions, or an empty list if there are none
+	 */
+	@Override
+	public PositionList getPositionList(String word, String location)
+	{
+		int shard = shard(word);
+		locks[shard].lockReadOnly();
+		try
+		{
+			return shards[shard].getPositionList(word, location);
+		}
+		finally
+		{
+			locks[shard].unlockReadOnly();
+		}
+	}
+
+	/**
+	 * Thread safe method to check if the inverted index contains a given word
+	 *
+	 * @param word - the word we are searching for
+	 * @return true if it exists in the index
+	 */
+	@Override
+	public boolean containsWord(String word)
+	{
+		int shard = shard(word);
+		locks[shard].lockReadOnly();
+		try
+		{
+			return shards[shard].containsWord(word);
+		}
+		finally
+		{
+			locks[shard].unlockReadOnly();
+		}
+	}
+
+	/**
+	 * Thread safe method to check if the inverted index contains a given path
+	 *
+	 * @param word - the word we're looking for within the path
+	 * @param path - the path itself
+	 * @return true if it exists in the index
+	 */
+	@Override
+	public boolean containsPath(String word, String path)
+	{
+		int shard = shard(word);
+		locks[shard].lockReadOnly();
+		try
+		{
+			return shards[shard].containsPath(word, path);
+		}
+		finally
+		{
+			locks[shard].unlockReadOnly();
+		}
+	}
+
+	/**
+	 * Thread safe method to check if the index contains the given key, path and position
+	 *
+	 * @param word - the word we are searching for
+	 * @param path - the path itself
+	 * @param position - its location within the file
+	 * @return true if it exists in the index
+	 */
+	@Override
+	public boolean containsLocation(String word, String path, int position)
+	{
+		int shard = shard(word);
+		locks[shard].lockReadOnly();
+		try
+		{
+			return shards[shard].containsLocation(word, path, position);
+		}
+		finally
+		{
+			locks[shard].unlockReadOnly();
+		}
+	}
+
+	/**
+	 * Thread safe method to return the number of words over every shard
+	 *
+	 * @return number of entries in the index
+	 */
+	@Override
+	public int words()
+	{
+		int words = 0;
+
+		for(int shard = 0; shard < shards.length; shard++)
+		{
+			locks[shard].lockReadOnly();
+			try
+			{
+				words += shards[shard].words();
+			}
+			finally
+			{
+				locks[shard].unlockReadOnly();
+			}
+		}
+
+		return words;
+	}
+
+	/**
+	 * Thread safe method to return the total number of positions of the word within a file
+	 *
+	 * @param word - the key we are using
+	 * @param locations - the path we are searching
+	 * @return - the total number of key appearances
+	 */
+	@Override
+	public int positions(String word, String locations)
+	{
+		int shard = shard(word);
+		locks[shard].lockReadOnly();
+		try
+		{
+			return shards[shard].positions(word, locations);
+		}
+		finally
+		{
+			locks[shard].unlockReadOnly();
+		}
+	}
+
+	/**
+	 * Thread safe method to return the number of words in a path, as published in the document table
+	 *
+	 * @param key - the relative path we're accessing
+	 * @return - the total number of words within it
+	 */
+	@Override
+	public int getLocationSize(String key)
+	{
+		documentsLock.lockReadOnly();
+		try
+		{
+			int document = documents.lookup(key);
+			return document < 0 ? 0 : documents.count(document);
+		}
+		finally
+		{
+			documentsLock.unlockReadOnly();
+		}
+	}
+
+	/**
+	 * Thread safe method to return the paths whose word counts have been published
+	 *
+	 * @return - an unmodifiable set of all relative paths
+	 */
+	@Override
+	public Set<String> getLocationPaths()
+	{
+		TreeMap<String, Integer> counts;
+
+		documentsLock.lockReadOnly();
+		try
+		{
+			counts = documents.toMap();
+		}
+		finally
+		{
+			documentsLock.unlockReadOnly();
+		}
+
+		counts.values().removeIf(count -> count == 0);
+		return Collections.unmodifiableSet(counts.keySet());
+	}
+}
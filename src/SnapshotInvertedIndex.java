@@ -0,0 +1,561 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A thread safe inverted index whose readers never lock. The index is a list
+ * of immutable segments, and readers work on whichever snapshot of that list
+ * was published last, so a search sees a single generation of the index from
+ * start to finish while writers keep adding to it.
+ *
+ * <p>Every index given to {@link #addIndexes(InvertedIndex)} becomes a new
+ * segment. Words added one at a time are buffered per document: the buffer is
+ * published as soon as a word of a different path is added, and the last
+ * document is published by {@link #compact()}, which callers such as
+ * {@link IndexBuilder} make once they are done adding. Writers take turns,
+ * and whenever the newest segment holds at least half as many positions as
+ * the one before it the two are copied into a single segment. Sizes are
+ * measured in positions rather than distinct words, since the vocabulary
+ * stops growing long before the index does, so the number of segments stays
+ * logarithmic in the size of the index.
+ */
+public class SnapshotInvertedIndex extends ThreadSafeInvertedIndex {
+
+	/**
+	 * An immutable list of segments along with its generation
+	 */
+	private static class Snapshot
+	{
+		private final long generation;
+		private final InvertedIndex[] segments;
+
+		private Snapshot(long generation, InvertedIndex[] segments)
+		{
+			this.generation = generation;
+			this.segments = segments;
+		}
+	}
+
+	private final AtomicReference<Snapshot> current;
+	private final Object writer;
+	private InvertedIndex pending;
+
+	/** The path of the words in the buffer, or null if it is empty */
+	private String pendingPath;
+
+	/**
+	 * Initializes an empty index
+	 */
+	public SnapshotInvertedIndex()
+	{
+		super();
+		this.current = new AtomicReference<>(new Snapshot(0, new InvertedIndex[0]));
+		this.writer = new Object();
+		this.pending = new InvertedIndex();
+		this.pendingPath = null;
+	}
+
+	/**
+	 * Returns the generation of the latest snapshot, which goes up every time
+	 * new words become visible to readers
+	 *
+	 * @return - the current generation
+	 */
+	public long generation()
+	{
+		return current.get().generation;
+	}
+
+	/**
+	 * Method to add a given word, path, and location of occurrences. The word
+	 * becomes visible to readers once a word of another path is added, or on
+	 * the next call to {@link #compact()}.
+	 *
+	 * @param word - The word we're storing
+	 * @param path - The file path we are iterating through
+	 * @param occurences - The locations of where the words appear in the file
+	 * @return - true if the word had not been added at that position since the last publish
+	 */
+	@Override
+	public boolean add(String word, String path, int occurrences)
+	{
+		synchronized(writer)
+		{
+			if(pendingPath != null && !pendingPath.equals(path))
+			{
+				publishPending();
+			}
+
+			pendingPath = path;
+			return pending.add(word, path, occurrences);
+		}
+	}
+
+	/**
+	 * Method to publish every word added since the last call as a new segment
+	 */
+	@Override
+	public void compact()
+	{
+		synchronized(writer)
+		{
+			publishPending();
+		}
+	}
+
+	/**
+	 * Publishes the buffered words, if there are any. Must hold the writer lock.
+	 */
+	private void publishPending()
+	{
+		if(pending.words() > 0)
+		{
+			pending.compact();
+			publish(pending);
+			pending = new InvertedIndex();
+		}
+
+		pendingPath = null;
+	}
+
+	/**
+	 * Method to publish another index as a new segment. The other index is
+	 * handed over and must not be changed afterwards.
+	 *
+	 * @param other - The index we are taking information from
+	 */
+	@Override
+	public void addIndexes(InvertedIndex other)
+	{
+		other.compact();
+
+		if(other.words() == 0)
+		{
+			return;
+		}
+
+		synchronized(writer)
+		{
+			publish(other);
+		}
+	}
+
+	/**
+	 * Publishes a new snapshot with the given segment added, merging the newest
+	 * segments while they are close in size. Must hold the writer lock.
+	 *
+	 * @param segment - the compacted segment to add
+	 */
+	private void publish(InvertedIndex segment)
+	{
+		Snapshot snapshot = current.get();
+		ArrayList<InvertedIndex> segments = new ArrayList<>(snapshot.segments.length + 1);
+		Collections.addAll(segments, snapshot.segments);
+		segments.add(segment);
+
+		while(segments.size() > 1)
+		{
+			InvertedIndex last = segments.get(segments.size() - 1);
+			InvertedIndex before = segments.get(segments.size() - 2);
+
+			if(last.size() * 2 < before.size())
+			{
+				break;
+			}
+
+			// published segments are shared with readers, so they are copied rather than changed
+			InvertedIndex merged = new InvertedIndex();
+			before.copyTo(merged);
+			last.copyTo(merged);
+			merged.compact();
+
+			segments.remove(segments.size() - 1);
+			segments.set(segments.size() - 1, merged);
+		}
+
+		current.set(new Snapshot(snapshot.generation + 1, segments.toArray(new InvertedIndex[0])));
+	}
+
+	/**
+	 * Method that searches for exact searches in the latest snapshot
+	 *
+	 * @param queryWords - The words from the query file we are looking for
+	 * @return - An array list of type result
+	 */
+	@Override
+	public ArrayList<Result> exactSearch(Collection<String> queryWords)
+	{
+		ArrayList<Result> resultsList = matches(current.get(), queryWords, true);
+		Collections.sort(resultsList);
+		return resultsList;
+	}
+
+	/**
+	 * Method that searches for partial searches in the latest snapshot
+	 *
+	 * @param queryWords - A line of words from the query file we are looking for
+	 * @return - An array list of type result
+	 */
+	@Override
+	public ArrayList<Result> partialSearch(Collection<String> queryWords)
+	{
+		ArrayList<Result> resultsList = matches(current.get(), queryWords, false);
+		Collections.sort(resultsList);
+		return resultsList;
+	}
+
+	/**
+	 * Method that searches the latest snapshot but only keeps the best results
+	 *
+	 * @param queryWords - The words we are looking for
+	 * @param exact - true for an exact search, false for a partial search
+	 * @param limit - The maximum number of results to return
+	 * @return - The best results along with the total number of matches
+	 */
+	@Override
+	public SearchResults search(Collection<String> queryWords, boolean exact, int limit)
+	{
+		return SearchResults.select(matches(current.get(), queryWords, exact), limit);
+	}
+
+	/**
+	 * Collects a result for every document of the latest snapshot matching the
+	 * query words, in no particular order
+	 *
+	 * @param queryWords - The words we are looking for
+	 * @param exact - true to match whole words, false to match words as prefixes
+	 * @return - An unsorted array list of type results
+	 */
+	@Override
+	ArrayList<Result> matches(Collection<String> queryWords, boolean exact)
+	{
+		return matches(current.get(), queryWords, exact);
+	}
+
+	/**
+	 * Collects a result for every document of a snapshot matching the query
+	 * words, adding up the occurrences and word counts of every segment
+	 *
+	 * @param snapshot - The snapshot to search
+	 * @param queryWords - The words we are looking for
+	 * @param exact - true to match whole words, false to match words as prefixes
+	 * @return - An unsorted array list of type results
+	 */
+	private static ArrayList<Result> matches(Snapshot snapshot, Collection<String> queryWords, boolean exact)
+	{
+		if(snapshot.segments.length == 1)
+		{
+			return snapshot.segments[0].matches(queryWords, exact);
+		}
+
+		HashMap<String, Integer> occurrences = new HashMap<>();
+
+		for(InvertedIndex segment : snapshot.segments)
+		{
+			for(Result result : segment.matches(queryWords, exact))
+			{
+				occurrences.merge(result.getPath(), result.getOccurences(), Integer::sum);
+			}
+		}
+
+		ArrayList<Result> resultsList = new ArrayList<>(occurrences.size());
+
+		for(Map.Entry<String, Integer> entry : occurrences.entrySet())
+		{
+			resultsList.add(new Result(entry.getKey(), entry.getValue(), getLocationSize(snapshot, entry.getKey())));
+		}
+
+		return resultsList;
+	}
+
+	/**
+	 * Method to output the latest snapshot in JSON format
+	 *
+	 * @param path - The file path we are writing to
+	 * @throws IOException
+	 */
+	@Override
+	public void toJSON(Path path) throws IOException
+	{
+		merge(current.get()).toJSON(path);
+	}
+
+	/**
+	 * Method to write the latest snapshot to a binary segment file
+	 *
+	 * @param path - The file path we are writing to
+	 * @throws IOException
+	 */
+	@Override
+	public void toSegment(Path path) throws IOException
+	{
+		merge(current.get()).toSegment(path);
+	}
+
+	/**
+	 * Method to output the -locations object of the latest snapshot in JSON format
+	 *
+	 * @param path - The path we are writing to
+	 * @throws IOException
+	 */
+	@Override
+	public void fileInfoToJSON(Path path) throws IOException
+	{
+		TreeMap<String, Integer> counts = new TreeMap<>();
+
+		for(InvertedIndex segment : current.get().segments)
+		{
+			for(String location : segment.getLocationPaths())
+			{
+				counts.merge(location, segment.getLocationSize(location), Integer::sum);
+			}
+		}
+
+		try(BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8))
+		{
+			JSONWriter.fileInfoObject(counts, writer, 0);
+		}
+	}
+
+	/**
+	 * Copies every segment of a snapshot into a single index
+	 *
+	 * @param snapshot - the snapshot to copy
+	 * @return - a new index holding everything in the snapshot
+	 */
+	private static InvertedIndex merge(Snapshot snapshot)
+	{
+		InvertedIndex merged = new InvertedIndex();
+
+		for(InvertedIndex segment : snapshot.segments)
+		{
+			segment.copyTo(merged);
+		}
+
+		merged.compact();
+		return merged;
+	}
+
+	/**
+	 * Method to return a sorted set of the words in the latest snapshot
+	 *
+	 * @return - the unmodifiable set
+	 */
+	@Override
+	public Set<String> getWords()
+	{
+		Snapshot snapshot = current.get();
+
+		if(snapshot.segments.length == 1)
+		{
+			return snapshot.segments[0].getWords();
+		}
+
+		TreeSet<String> words = new TreeSet<>();
+
+		for(InvertedIndex segment : snapshot.segments)
+		{
+			words.addAll(segment.getWords());
+		}
+
+		return Collections.unmodifiableSet(words);
+	}
+
+	/**
+	 * Method to return the locations of a word in the latest snapshot
+	 *
+	 * @param word - the initial key we're using
+	 * @return - the unmodifiable set
+	 */
+	@Override
+	public Set<String> getLocations(String word)
+	{
+		TreeSet<String> locations = new TreeSet<>();
+
+		for(InvertedIndex segment : current.get().segments)
+		{
+			locations.addAll(segment.getLocations(word));
+		}
+
+		return Collections.unmodifiableSet(locations);
+	}
+
+	/**
+	 * Method to return a copy of the positions of a word within a file in the latest snapshot
+	 *
+	 * @param word - the initial key we're using
+	 * @param location - the path we are searching
+	 * @return - the sorted positions, or an empty list if there are none
+	 */
+	@Override
+	public PositionList getPositionList(String word, String location)
+	{
+		PositionList positions = new PositionList();
+
+		for(InvertedIndex segment : current.get().segments)
+		{
+			if(segment.containsPath(word, location))
+			{
+				positions.addAll(segment.getPositionList(word, location));
+			}
+		}
+
+		return positions;
+	}
+
+	/**
+	 * Method to check if the latest snapshot contains a given word
+	 *
+	 * @param word - the word we are searching for
+	 * @return true if it exists in the index
+	 */
+	@Override
+	public boolean containsWord(String word)
+	{
+		for(InvertedIndex segment : current.get().segments)
+		{
+			if(segment.containsWord(word))
+			{
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Method to check if the latest snapshot contains a given path for a word
+	 *
+	 * @param word - the word we're looking for within the path
+	 * @param path - the path itself
+	 * @return true if it exists in the index
+	 */
+	@Override
+	public boolean containsPath(String word, String path)
+	{
+		for(InvertedIndex segment : current.get().segments)
+		{
+			if(segment.containsPath(word, path))
+			{
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Method to check if the latest snapshot contains the given key, path and position
+	 *
+	 * @param word - the word we are searching for
+	 * @param path - the path itself
+	 * @param position - its location within the file
+	 * @return true if it exists in the index
+	 */
+	@Override
+	public boolean containsLocation(String word, String path, int position)
+	{
+		for(InvertedIndex segment : current.get().segments)
+		{
+			if(segment.containsLocation(word, path, position))
+			{
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Method to return the number of words in the latest snapshot
+	 *
+	 * @return number of entries in the index
+	 */
+	@Override
+	public int words()
+	{
+		return getWords().size();
+	}
+
+	/**
+	 * Method to return the total number of positions of the word within a file
+	 *
+	 * @param word - the key we are using
+	 * @param locations - the path we are searching
+	 * @return - the total number of key appearances
+	 */
+	@Override
+	public int positions(String word, String locations)
+	{
+		return getPositionList(word, locations).size();
+	}
+
+	/**
+	 * Method to return the number of words in a path, summed over the segments of the latest snapshot
+	 *
+	 * @param key - the relative path we're accessing
+	 * @return - the total number of words within it
+	 */
+	@Override
+	public int getLocationSize(String key)
+	{
+		return getLocationSize(current.get(), key);
+	}
+
+	/**
+	 * Sums the word count of a path over the segments of a snapshot
+	 *
+	 * @param snapshot - the snapshot to look in
+	 * @param key - the relative path
+	 * @return - the total number of words within it
+	 */
+	private static int getLocationSize(Snapshot snapshot, String key)
+	{
+		int size = 0;
+
+		for(InvertedIndex segment : snapshot.segments)
+		{
+			size += segment.getLocationSize(key);
+		}
+
+		return size;
+	}
+
+	/**
+	 * Method to return the paths in the latest snapshot
+	 *
+	 * @return - an unmodifiable set of all relative paths
+	 */
+	@Override
+	public Set<String> getLocationPaths()
+	{
+		TreeSet<String> paths = new TreeSet<>();
+
+		for(InvertedIndex segment : current.get().segments)
+		{
+			paths.addAll(segment.getLocationPaths());
+		}
+
+		return Collections.unmodifiableSet(paths);
+	}
+
+	/**
+	 * Overriding default toString method, using the latest snapshot
+	 */
+	@Override
+	public String toString()
+	{
+		return merge(current.get()).toString();
+	}
+}
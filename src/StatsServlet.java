@@ -0,0 +1,33 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Servlet that reports the metrics of the most recently started work queues
+ * as plain text, so they can be read in a browser or collected by a script
+ */
+@SuppressWarnings("serial")
+public class StatsServlet extends HttpServlet {
+
+	@Override
+	protected void doGet(HttpServletRequest request, HttpServletResponse response)
+			throws ServletException, IOException {
+
+		response.setContentType("text/plain");
+		response.setStatus(HttpServletResponse.SC_OK);
+
+		PrintWriter out = response.getWriter();
+
+		for(WorkQueueMetrics metrics : WorkQueue.recentMetrics())
+		{
+			out.printf("%s%n%n", metrics);
+		}
+
+		out.printf("stems: %d cached, %d computed%n", WordStemmer.hits(), WordStemmer.misses());
+		out.printf("fetched: %d bytes received, %d bytes decoded%n", HttpsFetcher.receivedBytes(), HttpsFetcher.decodedBytes());
+	}
+}
@@ -0,0 +1,292 @@
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A dictionary that maps every distinct term in an inverted index to a dense
+ * integer ID, so postings can be keyed by ID instead of repeating the term
+ * string.
+ *
+ * <p>Alongside the IDs the dictionary keeps an array of every ID in sorted term
+ * order. All the terms sharing a prefix sit in one contiguous block of that
+ * array, so a prefix is expanded with two binary searches instead of a walk
+ * through every candidate term. The array is brought up to date the first
+ * time it is needed after new terms were added, by sorting only the new terms
+ * and merging them in.
+ */
+public class TermDictionary {
+
+	private final HashMap<String, Integer> ids;
+	private final ArrayList<String> terms;
+	private volatile int[] sorted;
+
+	/**
+	 * Initializes an empty dictionary
+	 */
+	public TermDictionary()
+	{
+		this.ids = new HashMap<>();
+		this.terms = new ArrayList<>();
+		this.sorted = new int[0];
+	}
+
+	/**
+	 * Returns the ID of the given term, assigning the next free ID if the term
+	 * has not been seen before
+	 *
+	 * @param term - the term to look up or add
+	 * @return - the ID of the term
+	 */
+	public int add(String term)
+	{
+		Integer id = ids.get(term);
+
+		if(id == null)
+		{
+			id = terms.size();
+			ids.put(term, id);
+			terms.add(term);
+		}
+
+		return id;
+	}
+
+	/**
+	 * Returns the ID of the given term
+	 *
+	 * @param term - the term to look up
+	 * @return - the ID of the term, or -1 if it is not in the dictionary
+	 */
+	public int lookup(String term)
+	{
+		Integer id = ids.get(term);
+		return id == null ? -1 : id;
+	}
+
+	/**
+	 * Returns the term stored under the given ID
+	 *
+	 * @param id - the ID of the term
+	 * @return - the term itself
+	 */
+	public String term(int id)
+	{
+		return terms.get(id);
+	}
+
+	/**
+	 * Returns the IDs of every term starting with the given prefix, in sorted
+	 * term order
+	 *
+	 * @param prefix - the prefix to expand
+	 * @return - the IDs of the matching terms
+	 */
+	public int[] withPrefix(String prefix)
+	{
+		int[] order = sorted();
+		return Arrays.copyOfRange(order, lowerBound(order, prefix), upperBound(order, prefix));
+	}
+
+	/**
+	 * Returns the number of terms starting with the given prefix, without
+	 * expanding them
+	 *
+	 * @param prefix - the prefix to count
+	 * @return - the number of matching terms
+	 */
+	public int countPrefix(String prefix)
+	{
+		int[] order = sorted();
+		return upperBound(order, prefix) - lowerBound(order, prefix);
+	}
+
+	/**
+	 * Returns an unmodifiable, sorted view of every term in the dictionary
+	 *
+	 * @return - the sorted terms
+	 */
+	public Set<String> terms()
+	{
+		int[] order = sorted();
+
+		return new AbstractSet<String>()
+		{
+			@Override
+			public Iterator<String> iterator()
+			{
+				return new Iterator<String>()
+				{
+					private int rank = 0;
+
+					@Override
+					public boolean hasNext()
+					{
+						return rank < order.length;
+					}
+
+					@Override
+					public String next()
+					{
+						if(rank >= order.length)
+						{
+							throw new NoSuchElementException();
+						}
+
+						return terms.get(order[rank++]);
+					}
+				};
+			}
+
+			@Override
+			public boolean contains(Object term)
+			{
+				return ids.containsKey(term);
+			}
+
+			@Override
+			public int size()
+			{
+				return order.length;
+			}
+		};
+	}
+
+	/**
+	 * Returns the number of terms in the dictionary
+	 *
+	 * @return - the number of terms
+	 */
+	public int size()
+	{
+		return terms.size();
+	}
+
+	/**
+	 * Finds the first rank whose term is not less than the prefix
+	 *
+	 * @param order - the term IDs in sorted order
+	 * @param prefix - the prefix to look for
+	 * @return - the first rank of the block of terms starting with the prefix
+	 */
+	private int lowerBound(int[] order, String prefix)
+	{
+		int low = 0;
+		int high = order.length;
+
+		while(low < high)
+		{
+			int middle = (low + high) >>> 1;
+
+			if(terms.get(order[middle]).compareTo(prefix) < 0)
+			{
+				low = middle + 1;
+			}
+			else
+			{
+				high = middle;
+			}
+		}
+
+		return low;
+	}
+
+	/**
+	 * Finds the first rank whose term is greater than the prefix and does not
+	 * start with it
+	 *
+	 * @param order - the term IDs in sorted order
+	 * @param prefix - the prefix to look for
+	 * @return - the rank just past the block of terms starting with the prefix
+	 */
+	private int upperBound(int[] order, String prefix)
+	{
+		int low = 0;
+		int high = order.length;
+
+		while(low < high)
+		{
+			int middle = (low + high) >>> 1;
+			String term = terms.get(order[middle]);
+
+			if(term.startsWith(prefix) || term.compareTo(prefix) < 0)
+			{
+				low = middle + 1;
+			}
+			else
+			{
+				high = middle;
+			}
+		}
+
+		return low;
+	}
+
+	/**
+	 * Returns the term IDs in sorted term order, first merging in any terms
+	 * added since the last call
+	 *
+	 * @return - the sorted term IDs
+	 */
+	private int[] sorted()
+	{
+		int[] order = sorted;
+
+		if(order.length == terms.size())
+		{
+			return order;
+		}
+
+		synchronized(this)
+		{
+			order = sorted;
+			int size = terms.size();
+
+			if(order.length == size)
+			{
+				return order;
+			}
+
+			// new terms always have the highest IDs, so only they need sorting
+			Integer[] added = new Integer[size - order.length];
+
+			for(int i = 0; i < added.length; i++)
+			{
+				added[i] = order.length + i;
+			}
+
+			Arrays.sort(added, (a, b) -> terms.get(a).compareTo(terms.get(b)));
+
+			int[] merged = new int[size];
+			int i = 0, j = 0, k = 0;
+
+			while(i < order.length && j < added.length)
+			{
+				if(terms.get(order[i]).compareTo(terms.get(added[j])) < 0)
+				{
+					merged[k++] = order[i++];
+				}
+				else
+				{
+					merged[k++] = added[j++];
+				}
+			}
+
+			while(i < order.length)
+			{
+				merged[k++] = order[i++];
+			}
+
+			while(j < added.length)
+			{
+				merged[k++] = added[j++];
+			}
+
+			sorted = merged;
+			return merged;
+		}
+	}
+}
@@ -1,4 +1,5 @@
 import java.text.Normalizer;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.TreeSet;
 import java.util.regex.Pattern;
@@ -40,7 +41,8 @@ public class TextParser {
 	}
 
 	/**
-	 * Cleans the text and then splits it by whitespace.
+	 * Cleans the text and then splits it by whitespace, in a single pass with a
+	 * {@link Tokenizer}.
 	 *
 	 * @param text the text to clean and split
 	 * @return an array of {@link String} objects
@@ -49,7 +51,9 @@ public class TextParser {
 	 * @see #parse(String)
 	 */
 	public static String[] parse(String text) {
-		return split(clean(text));
+		ArrayList<String> words = new ArrayList<>();
+		Tokenizer.tokenize(text, (word, position) -> words.add(word.toString()));
+		return words.toArray(new String[0]);
 	}
 	
 	/**
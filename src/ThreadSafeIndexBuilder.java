@@ -2,6 +2,9 @@ import java.io.IOException;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * Class to multithread building an inverted index
@@ -20,7 +23,7 @@ public class ThreadSafeIndexBuilder
 	 */
 	public static void buildHelper(Path path, ThreadSafeInvertedIndex index, int threads) throws IOException
 	{
-		WorkQueue queue = new WorkQueue(threads);
+		WorkQueue queue = new WorkQueue(threads, threads * WorkQueue.BACKLOG, "index");
 		try
 		{
 			readPathHelper(path, index, queue);
@@ -32,6 +35,39 @@ public class ThreadSafeIndexBuilder
 		}
 	}
 
+	/**
+	 * Builds the index by reducing per-file local indexes in a fork join pool.
+	 * Every file is read into its own local index, and pairs of local indexes
+	 * are merged up a balanced tree, so each merge only ever touches two
+	 * indexes and never the shared one. The result is added to the shared
+	 * index once, taking its write lock a single time.
+	 * 
+	 * @param path - the path we are reading from
+	 * @param index - the index we are building
+	 * @param threads - the parallelism of the fork join pool
+	 * @throws IOException
+	 */
+	public static void reduceHelper(Path path, ThreadSafeInvertedIndex index, int threads) throws IOException
+	{
+		List<Path> files = TextFileTraverser.traverse(path);
+		
+		if(files.isEmpty())
+		{
+			return;
+		}
+		
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		
+		try
+		{
+			index.addIndexes(pool.invoke(new ReduceTask(files, 0, files.size())));
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+	}
+
 	/**
 	 * Recursively traverses through the given path and creates workers based on 
 	 * whether or not we find a new file
@@ -60,6 +96,59 @@ public class ThreadSafeIndexBuilder
 		}
 	}
 
+	/**
+	 * 
+	 * Nested fork join task that builds the local index of a range of files
+	 * by building each half and merging the right one into the left one
+	 *
+	 */
+	private static class ReduceTask extends RecursiveTask<InvertedIndex>
+	{
+		private static final long serialVersionUID = 1L;
+		
+		private final List<Path> files;
+		private final int start;
+		private final int end;
+
+		public ReduceTask(List<Path> files, int start, int end)
+		{
+			this.files = files;
+			this.start = start;
+			this.end = end;
+		}
+		
+		@Override
+		protected InvertedIndex compute()
+		{
+			if(end - start == 1)
+			{
+				InvertedIndex local = new InvertedIndex();
+				
+				try
+				{
+					IndexBuilder.readFile(files.get(start), local);
+				}
+				catch(IOException e)
+				{
+					System.err.println("There was an error when building the multithreading index: " + e);
+				}
+				
+				return local;
+			}
+			
+			int middle = (start + end) >>> 1;
+			ReduceTask left = new ReduceTask(files, start, middle);
+			left.fork();
+			
+			InvertedIndex right = new ReduceTask(files, middle, end).compute();
+			InvertedIndex merged = left.join();
+			
+			// the left half holds the earlier files, so their documents keep the lower IDs
+			merged.addIndexes(right);
+			return merged;
+		}
+	}
+
 	/**
 	 * 
 	 * Nested worker class that builds the index
@@ -7,7 +7,16 @@ import java.util.Set;
 
 public class ThreadSafeInvertedIndex extends InvertedIndex {
 	
-	private final ReadWriteLock lock;
+	/** The number of queries whose results are cached */
+	private static final int CACHED_QUERIES = 1024;
+	
+	/** Guards the in-memory index; subclasses hold it to read their own data in the same snapshot */
+	protected final ReadWriteLock lock;
+	private final QueryCache<ArrayList<Result>> results;
+	private final QueryCache<SearchResults> pages;
+	
+	/** Bumped by every change to the index, so cached results of older generations are ignored */
+	private volatile long generation;
 	
 	/**
 	 * Creating a thread safe inverted index & initializing our ReadWriteLock
@@ -16,6 +25,9 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 	{
 		super();
 		lock = new ReadWriteLock();
+		results = new QueryCache<>(CACHED_QUERIES);
+		pages = new QueryCache<>(CACHED_QUERIES);
+		generation = 0;
 	}
 	
 	/**
@@ -32,6 +44,7 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 		lock.lockReadWrite();
 		try
 		{
+			generation++;
 			return super.add(word, path, occurrences);
 		}
 		finally 
@@ -40,6 +53,23 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 		}
 	}
 	
+	/**
+	 * Thread safe method to compact every position list that was added to since the last call
+	 */
+	@Override
+	public void compact()
+	{
+		lock.lockReadWrite();
+		try
+		{
+			super.compact();
+		}
+		finally
+		{
+			lock.unlockReadWrite();
+		}
+	}
+	
 	/**
 	 * Method to add all information in one given inverted index to another
 	 * 
@@ -51,6 +81,7 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 		lock.lockReadWrite();
 		try
 		{
+			generation++;
 			super.addIndexes(other);
 		}
 		finally
@@ -61,6 +92,7 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 	
 	/**
 	 * Thread safe method that searches for exact searches between query words and words within the inverted index
+	 * The results are cached until the index changes.
 	 * 
 	 * @param queryWords - The words from the query file we are looking for
 	 * @return - An array list of type result
@@ -68,10 +100,20 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 	@Override
 	public ArrayList<Result> exactSearch(Collection<String> queryWords)
 	{
+		String key = QueryCache.key(queryWords, true);
+		ArrayList<Result> cached = results.get(key, generation);
+		
+		if(cached != null)
+		{
+			return new ArrayList<>(cached);
+		}
+		
 		lock.lockReadOnly();
 		try
 		{
-			return super.exactSearch(queryWords);
+			ArrayList<Result> resultsList = super.exactSearch(queryWords);
+			results.put(key, generation, resultsList);
+			return new ArrayList<>(resultsList);
 		}
 		finally
 		{
@@ -81,6 +123,7 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 	
 	/**
 	 * Thread safe method that searches for partial searches between query words and words within the inverted index
+	 * The results are cached until the index changes.
 	 * 
 	 * @param queryWords - A line of words from the query file we are looking for
 	 * @return - An array list of type result
@@ -89,10 +132,53 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 	@Override
 	public ArrayList<Result> partialSearch(Collection<String> queryWords)
 	{
+		String key = QueryCache.key(queryWords, false);
+		ArrayList<Result> cached = results.get(key, generation);
+		
+		if(cached != null)
+		{
+			return new ArrayList<>(cached);
+		}
+		
 		lock.lockReadOnly();
 		try
 		{
-			return super.partialSearch(queryWords);
+			ArrayList<Result> resultsList = super.partialSearch(queryWords);
+			results.put(key, generation, resultsList);
+			return new ArrayList<>(resultsList);
+		}
+		finally
+		{
+			lock.unlockReadOnly();
+		}
+	}
+	
+	/**
+	 * Thread safe method that searches the inverted index but only keeps the best results
+	 * The results are cached until the index changes.
+	 * 
+	 * @param queryWords - The words we are looking for
+	 * @param exact - true for an exact search, false for a partial search
+	 * @param limit - The maximum number of results to return
+	 * @return - The best results along with the total number of matches
+	 */
+	@Override
+	public SearchResults search(Collection<String> queryWords, boolean exact, int limit)
+	{
+		String key = limit + ":" + QueryCache.key(queryWords, exact);
+		SearchResults cached = pages.get(key, generation);
+		
+		if(cached != null)
+		{
+			return new SearchResults(new ArrayList<>(cached.getResults()), cached.getTotal());
+		}
+		
+		lock.lockReadOnly();
+		try
+		{
+			SearchResults page = super.search(queryWords, exact, limit);
+			pages.put(key, generation, page);
+			return new SearchResults(new ArrayList<>(page.getResults()), page.getTotal());
 		}
 		finally
 		{
@@ -120,6 +206,26 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 		}
 	}
 	
+	/**
+	 * Thread safe method to write the inverted index to a binary segment file
+	 * 
+	 * @param path - The file path we are writing to
+	 * @throws IOException
+	 */
+	@Override
+	public void toSegment(Path path) throws IOException
+	{
+		lock.lockReadOnly();
+		try
+		{
+			super.toSegment(path);
+		}
+		finally
+		{
+			lock.unlockReadOnly();
+		}
+	}
+	
 	/**
 	 * Thread safe method to output a -locations inverted index object in JSON format
 	 * 
@@ -180,6 +286,27 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 		}
 	}
 	
+	/**
+	 * Thread safe method to return a copy of the positions of a word within a file
+	 * 
+	 * @param word - the initial key we're using
+	 * @param location - the path we are searching
+	 * @return - the sorted positions, or an empty list if there are none
+	 */
+	@Override
+	public PositionList getPositionList(String word, String location)
+	{
+		lock.lockReadOnly();
+		try
+		{
+			return super.getPositionList(word, location);
+		}
+		finally
+		{
+			lock.unlockReadOnly();
+		}
+	}
+	
 	/**
 	 * Thread safe boolean method to check if the inverted index contains a given word
 	 * 
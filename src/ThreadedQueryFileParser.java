@@ -6,8 +6,6 @@ import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.TreeMap;
 import java.util.TreeSet;
-import opennlp.tools.stemmer.snowball.SnowballStemmer;
-import opennlp.tools.stemmer.snowball.SnowballStemmer.ALGORITHM;
 
 
 public class ThreadedQueryFileParser implements QueryParserHelper
@@ -42,7 +40,7 @@ public class ThreadedQueryFileParser implements QueryParserHelper
 	@Override
 	public void parseQuery(Path path, boolean exactSearch) throws IOException
 	{
-		WorkQueue queue = new WorkQueue(threads);
+		WorkQueue queue = new WorkQueue(threads, threads * WorkQueue.BACKLOG, "query");
 		
 		try(BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8);)
 		{
@@ -99,12 +97,11 @@ public class ThreadedQueryFileParser implements QueryParserHelper
 		@Override
 		public void run()
 		{
-			SnowballStemmer stemmer = new SnowballStemmer(ALGORITHM.ENGLISH);
 			TreeSet<String> queryWords = new TreeSet<>();
 					
 			for(String word : TextParser.parse(line))
 			{
-				queryWords.add(stemmer.stem(word).toString());
+				queryWords.add(WordStemmer.stem(word));
 			}
 					
 			if(queryWords.isEmpty())
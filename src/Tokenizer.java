@@ -0,0 +1,298 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.text.Normalizer;
+
+/**
+ * Splits text into lowercase words in a single pass, producing the same words
+ * as normalizing the text to NFD, removing every character that is neither
+ * alphabetic nor whitespace, splitting on whitespace and lowercasing. The only
+ * difference is the order of combining marks that were separated by removed
+ * characters, which does not occur in real text.
+ *
+ * <p>ASCII characters are handled with plain comparisons. Any other character
+ * is looked up in a table of what is left of it once it is decomposed and its
+ * diacritical marks are removed, filled in the first time the character is
+ * seen. Words are handed to a {@link TokenConsumer} as a reused
+ * {@link CharSequence} along with their position, so no strings or arrays are
+ * built for the text itself.
+ */
+public class Tokenizer {
+
+	/**
+	 * Receives the words found by a tokenizer
+	 */
+	@FunctionalInterface
+	public interface TokenConsumer
+	{
+		/**
+		 * Accepts a single word
+		 *
+		 * @param token - the lowercase word, only valid until this method returns
+		 * @param position - the position of the word, starting at 1
+		 */
+		void accept(CharSequence token, int position);
+	}
+
+	/** Marks characters that separate words in the table of stripped characters */
+	private static final String SEPARATOR = new String(" ");
+
+	/** What is left of every non-ASCII character once decomposed and stripped, filled in lazily */
+	private static final String[] STRIPPED = new String[Character.MAX_VALUE + 1];
+
+	private final TokenConsumer consumer;
+	private final StringBuilder token;
+	private boolean lowered;
+	private char high;
+	private int position;
+
+	/**
+	 * Initializes a tokenizer that hands its words to the given consumer
+	 *
+	 * @param consumer - the consumer of the words
+	 */
+	public Tokenizer(TokenConsumer consumer)
+	{
+		this.consumer = consumer;
+		this.token = new StringBuilder();
+		this.lowered = true;
+		this.high = 0;
+		this.position = 0;
+	}
+
+	/**
+	 * Tokenizes everything that can be read from a reader
+	 *
+	 * @param reader - the reader to tokenize
+	 * @param consumer - the consumer of the words
+	 * @return - the number of words found
+	 * @throws IOException
+	 */
+	public static int tokenize(Reader reader, TokenConsumer consumer) throws IOException
+	{
+		Tokenizer tokenizer = new Tokenizer(consumer);
+		char[] buffer = new char[8192];
+		int read;
+
+		while((read = reader.read(buffer)) != -1)
+		{
+			tokenizer.feed(buffer, 0, read);
+		}
+
+		return tokenizer.finish();
+	}
+
+	/**
+	 * Tokenizes a piece of text
+	 *
+	 * @param text - the text to tokenize
+	 * @param consumer - the consumer of the words
+	 * @return - the number of words found
+	 */
+	public static int tokenize(CharSequence text, TokenConsumer consumer)
+	{
+		Tokenizer tokenizer = new Tokenizer(consumer);
+		tokenizer.feed(text);
+		return tokenizer.finish();
+	}
+
+	/**
+	 * Tokenizes the next part of the text. A word may continue into the next
+	 * part.
+	 *
+	 * @param chars - the characters to read
+	 * @param offset - the index of the first character
+	 * @param length - the number of characters
+	 */
+	public void feed(char[] chars, int offset, int length)
+	{
+		for(int i = offset; i < offset + length; i++)
+		{
+			next(chars[i]);
+		}
+	}
+
+	/**
+	 * Tokenizes the next part of the text. A word may continue into the next
+	 * part.
+	 *
+	 * @param text - the text to read
+	 */
+	public void feed(CharSequence text)
+	{
+		feed(text, 0, text.length());
+	}
+
+	/**
+	 * Tokenizes part of a piece of text. A word may continue into the next part.
+	 *
+	 * @param text - the text to read
+	 * @param start - the index of the first character
+	 * @param end - the index just past the last character
+	 */
+	public void feed(CharSequence text, int start, int end)
+	{
+		for(int i = start; i < end; i++)
+		{
+			next(text.charAt(i));
+		}
+	}
+
+	/**
+	 * Ends the current word, as whitespace in the text would
+	 */
+	public void separate()
+	{
+		high = 0;
+		emit();
+	}
+
+	/**
+	 * Hands over the last word, if the text did not end with whitespace
+	 *
+	 * @return - the number of words found
+	 */
+	public int finish()
+	{
+		separate();
+		return position;
+	}
+
+	/**
+	 * Processes a single character
+	 *
+	 * @param c - the character
+	 */
+	private void next(char c)
+	{
+		if(c < 0x80 && high == 0)
+		{
+			if(c >= 'a' && c <= 'z')
+			{
+				token.append(c);
+			}
+			else if(c >= 'A' && c <= 'Z')
+			{
+				token.append((char) (c + ('a' - 'A')));
+			}
+			else if(c == ' ' || (c >= 0x9 && c <= 0xD))
+			{
+				emit();
+			}
+
+			return;
+		}
+
+		if(Character.isHighSurrogate(c))
+		{
+			high = c;
+			return;
+		}
+
+		String stripped;
+
+		if(high != 0)
+		{
+			char first = high;
+			high = 0;
+
+			if(!Character.isLowSurrogate(c))
+			{
+				// a lone surrogate is not a letter, so it is dropped
+				next(c);
+				return;
+			}
+
+			stripped = strip(Character.toCodePoint(first, c));
+		}
+		else
+		{
+			stripped = STRIPPED[c];
+
+			if(stripped == null)
+			{
+				stripped = strip(c);
+				STRIPPED[c] = stripped;
+			}
+		}
+
+		if(stripped == SEPARATOR)
+		{
+			emit();
+		}
+		else if(!stripped.isEmpty())
+		{
+			token.append(stripped);
+			lowered = false;
+		}
+	}
+
+	/**
+	 * Hands the current word to the consumer and starts a new one
+	 */
+	private void emit()
+	{
+		if(token.length() == 0)
+		{
+			return;
+		}
+
+		if(lowered)
+		{
+			consumer.accept(token, ++position);
+		}
+		else
+		{
+			// normalizing again puts combining marks from separate characters in
+			// canonical order, and full case mapping can depend on the rest of
+			// the word, as with a final sigma
+			consumer.accept(Normalizer.normalize(token, Normalizer.Form.NFD).toLowerCase(), ++position);
+			lowered = true;
+		}
+
+		token.setLength(0);
+	}
+
+	/**
+	 * Decomposes a character and keeps only its alphabetic parts
+	 *
+	 * @param codePoint - the character
+	 * @return - the alphabetic parts, or {@link #SEPARATOR} for whitespace
+	 */
+	private static String strip(int codePoint)
+	{
+		if(isSpace(codePoint))
+		{
+			return SEPARATOR;
+		}
+
+		String decomposed = Normalizer.normalize(new String(Character.toChars(codePoint)), Normalizer.Form.NFD);
+		StringBuilder kept = new StringBuilder(decomposed.length());
+
+		for(int i = 0; i < decomposed.length(); i += Character.charCount(decomposed.codePointAt(i)))
+		{
+			int part = decomposed.codePointAt(i);
+
+			if(Character.isAlphabetic(part))
+			{
+				kept.appendCodePoint(part);
+			}
+		}
+
+		return kept.toString();
+	}
+
+	/**
+	 * Checks whether a character is whitespace, using the same definition as
+	 * the Unicode version of the \p{Space} regular expression class
+	 *
+	 * @param codePoint - the character
+	 * @return - true if the character is whitespace
+	 */
+	private static boolean isSpace(int codePoint)
+	{
+		int type = Character.getType(codePoint);
+
+		return type == Character.SPACE_SEPARATOR || type == Character.LINE_SEPARATOR || type == Character.PARAGRAPH_SEPARATOR
+				|| (codePoint >= 0x9 && codePoint <= 0xD) || codePoint == 0x85;
+	}
+}
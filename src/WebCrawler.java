@@ -1,23 +1,77 @@
 import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.HashSet;
-import opennlp.tools.stemmer.snowball.SnowballStemmer;
-import opennlp.tools.stemmer.snowball.SnowballStemmer.ALGORITHM;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * Class to build an inverted index from URLs rather than text files
+ * Class to build an inverted index from URLs rather than text files.
+ * 
+ * By default every page is fetched and parsed by the same worker of a work
+ * queue, so the number of threads caps how many pages can wait on the network
+ * at once. A crawler created with a number of connections instead fetches
+ * every page on its own virtual thread, at most that many at a time, and only
+ * hands the fetched pages to the work queue for parsing. A crawler created
+ * with a {@link NioFetcher} does the same, but keeps every fetch in flight on
+ * the single selector thread of the fetcher. Either way a fetched page counts
+ * against the connections until it has been parsed, or the selector thread
+ * waits for room on the work queue, so pages are never fetched faster than
+ * they can be parsed.
+ * 
+ * Whichever way pages are fetched, they wait in a {@link HostScheduler} until
+ * their host allows another fetch. A crawl given a {@link CrawlStore} keeps the
+ * pages it has seen on disk instead of in memory, checkpoints itself every
+ * {@value #CHECKPOINT_INTERVAL} pages and once it is done, and continues from
+ * the last checkpoint if the store was resumed.
  * @author sameerisaq
  *
  */
 public class WebCrawler {
 	
+	/** The maximum number of links collected from a single page */
+	private static final int MAX_LINKS = 1000;
+	
+	/** The number of redirects followed from a single page */
+	private static final int REDIRECTS = 3;
+	
+	/** The number of pages indexed between two checkpoints of a crawl with a store */
+	public static final int CHECKPOINT_INTERVAL = 500;
+	
 	private WorkQueue queue;
 	private ThreadSafeInvertedIndex index;
 	private final HashSet<String> links;
 	private final ReadWriteLock lock;
 	private int LIMIT;
 	
+	/** Runs the fetches when fetching apart from parsing, or null */
+	private final ExecutorService fetchers;
+	private final Semaphore connections;
+	private final NioFetcher nio;
+	
+	/** The number of pages scheduled whose crawl has not finished */
+	private final AtomicInteger outstanding;
+	
+	/** The most pages fetched at once, which a new host starts out allowed */
+	private final int concurrency;
+	
+	private int perHost;
+	private long delay;
+	private HostScheduler frontier;
+	
+	/** Keeps the pages seen on disk instead of in links, or null */
+	private CrawlStore store;
+	
+	/** Held to index a page and mark it done, and held exclusively to checkpoint */
+	private final ReadWriteLock checkpointLock;
+	
+	/** The pages indexed since the last checkpoint, when crawling with a store */
+	private ThreadSafeInvertedIndex recent;
+	
 	/**
 	 * Constructor for the webcrawler
 	 * @param index - the index we are building
@@ -29,7 +83,104 @@ public class WebCrawler {
 		this.LIMIT = 0;
 		links = new HashSet<String>();
 		lock = new ReadWriteLock();
-		queue = new WorkQueue(threads);
+		queue = new WorkQueue(threads, Integer.MAX_VALUE, "crawl");
+		fetchers = null;
+		connections = null;
+		nio = null;
+		concurrency = threads;
+		outstanding = new AtomicInteger();
+		perHost = HostScheduler.DEFAULT_LIMIT;
+		delay = 0;
+		checkpointLock = new ReadWriteLock();
+	}
+	
+	/**
+	 * Constructor for a webcrawler that fetches pages apart from parsing them
+	 * @param index - the index we are building
+	 * @param threads - the number of threads parsing fetched pages
+	 * @param connections - the maximum number of pages fetched at once
+	 */
+	public WebCrawler(ThreadSafeInvertedIndex index, int threads, int connections)
+	{
+		this.index = index;
+		this.LIMIT = 0;
+		links = new HashSet<String>();
+		lock = new ReadWriteLock();
+		queue = new WorkQueue(threads, Integer.MAX_VALUE, "crawl");
+		fetchers = newFetchExecutor(connections);
+		this.connections = new Semaphore(connections);
+		nio = null;
+		concurrency = connections;
+		outstanding = new AtomicInteger();
+		perHost = HostScheduler.DEFAULT_LIMIT;
+		delay = 0;
+		checkpointLock = new ReadWriteLock();
+	}
+	
+	/**
+	 * Constructor for a webcrawler that fetches pages with a non-blocking
+	 * fetcher, which is closed once the crawl is done
+	 * @param index - the index we are building
+	 * @param threads - the number of threads parsing fetched pages
+	 * @param fetcher - the fetcher
+	 */
+	public WebCrawler(ThreadSafeInvertedIndex index, int threads, NioFetcher fetcher)
+	{
+		this.index = index;
+		this.LIMIT = 0;
+		links = new HashSet<String>();
+		lock = new ReadWriteLock();
+		// the selector thread waits for room, so fetched pages never pile up ahead of the parsers
+		queue = new WorkQueue(threads, threads, "crawl");
+		fetchers = null;
+		connections = null;
+		nio = fetcher;
+		concurrency = fetcher.maxConnections();
+		outstanding = new AtomicInteger();
+		perHost = HostScheduler.DEFAULT_LIMIT;
+		delay = 0;
+		checkpointLock = new ReadWriteLock();
+	}
+	
+	/**
+	 * Sets how hard a single host may be crawled, applied from the next crawl on
+	 * @param perHost - the most fetches in flight to a single host
+	 * @param delay - the minimum time between the starts of two fetches from the same host, in milliseconds
+	 */
+	public void politeness(int perHost, long delay)
+	{
+		this.perHost = perHost;
+		this.delay = delay;
+	}
+	
+	/**
+	 * Creates the executor that runs fetches, starting a virtual thread for
+	 * every fetch when the runtime supports them. Older runtimes fall back to a
+	 * pool with one platform thread per allowed connection. Which one is used
+	 * is reported, as the fallback costs a platform thread per connection.
+	 * 
+	 * @param connections - the maximum number of pages fetched at once
+	 * @return - the executor
+	 */
+	private static ExecutorService newFetchExecutor(int connections)
+	{
+		try
+		{
+			Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			ExecutorService executor = (ExecutorService) method.invoke(null);
+			System.err.println("Fetching on virtual threads, at most " + connections + " at a time");
+			return executor;
+		}
+		catch(ReflectiveOperationException e)
+		{
+			System.err.println("Virtual threads are not supported by this runtime, fetching on a platform thread per connection (" + connections + ")");
+			return Executors.newFixedThreadPool(connections, runnable -> 
+			{
+				Thread thread = new Thread(runnable, "fetch");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
 	}
 	
 	/**
@@ -38,108 +189,541 @@ public class WebCrawler {
 	 * @param limit - the max number of urls we add to the index
 	 */
 	public void crawl(URL url, int limit)
+	{
+		prepare(limit, null);
+		run(url);
+	}
+	
+	/**
+	 * Crawls the web, keeping track of the pages seen in a store. If the store
+	 * was resumed, the index is first restored from its checkpoints and the
+	 * pages it had not indexed yet are scheduled again. While crawling with a
+	 * store, pages only reach the index at each checkpoint.
+	 * @param url - the root url, which is skipped if the store has already seen it
+	 * @param limit - the max number of urls we add to the index, including those seen before resuming
+	 * @param store - the store, or null to keep the pages seen in memory
+	 * @throws IOException if the index cannot be restored, in which case nothing is crawled
+	 * 					   and the checkpoint of the store is left as it was
+	 */
+	public void crawl(URL url, int limit, CrawlStore store) throws IOException
+	{
+		prepare(limit, store);
+		
+		if(store != null && store.isResumed())
+		{
+			try
+			{
+				store.restore(index);
+			}
+			catch(IOException e)
+			{
+				shutdown();
+				throw e;
+			}
+			
+			resume();
+		}
+		
+		run(url);
+	}
+	
+	/**
+	 * Sets up the next crawl
+	 * @param limit - the max number of urls we add to the index
+	 * @param store - the store, or null to keep the pages seen in memory
+	 */
+	private void prepare(int limit, CrawlStore store)
 	{
 		LIMIT = limit;
+		this.store = store;
+		recent = new ThreadSafeInvertedIndex();
+		frontier = new HostScheduler(perHost, delay, concurrency, this::start);
+	}
 	
+	/**
+	 * Crawls from the root url until every page scheduled is done, then
+	 * writes the last checkpoint if there is a store
+	 * @param url - the root url
+	 */
+	private void run(URL url)
+	{
 		try
 		{
-			if(!links.contains(url.toString()) && !url.toString().contains("\0"))
+			if(!url.toString().contains("\0") && visit(url.toString()))
 			{
-				links.add(url.toString());
-				queue.execute(new CrawlWorker(url));
+				submit(url);
 			}
+			
+			awaitFetches();
 		}
 		finally
 		{
-			queue.finish();
-			queue.shutdown();
+			shutdown();
+			
+			if(store != null)
+			{
+				checkpoint();
+			}
 		}
 	}
 	
 	/**
-	 * Private class that does the work of searching through URLs,
-	 * fetching html, and building the index
-	 *
+	 * Stops the threads of the crawl once the work queue is done
 	 */
-	private class CrawlWorker implements Runnable
+	private void shutdown()
 	{
-		private final URL url;
+		frontier.close();
+		queue.finish();
+		queue.shutdown();
 		
-		public CrawlWorker(URL url)
+		if(fetchers != null)
 		{
-			this.url = url;
+			fetchers.shutdown();
 		}
 		
-		@Override
-		public void run()
+		if(nio != null)
 		{
-			String html = null;
-			try 
+			nio.close();
+		}
+	}
+	
+	/**
+	 * Schedules every page the store has not indexed. They wait in the
+	 * frontier, in memory, like any other page.
+	 */
+	private void resume()
+	{
+		store.forEachPending(pending -> 
+		{
+			try
+			{
+				submit(new URL(pending));
+			}
+			catch(MalformedURLException e)
 			{
-				html = HTMLFetcher.fetchHTML(url, 3);
-			} 
-			catch (IOException e) 
-			{	
-				System.err.println("There was an issue with ");
+				System.err.println("Skipping an invalid URL from the checkpoint: " + pending);
 			}
+		});
+	}
+	
+	/**
+	 * Writes a checkpoint of the store with the pages indexed since the last
+	 * one, waiting for the pages being indexed and holding off the rest until
+	 * it is done. The pages are added to the index whether or not the
+	 * checkpoint could be written.
+	 */
+	private void checkpoint()
+	{
+		checkpointLock.lockReadWrite();
+		try
+		{
+			store.checkpoint(recent);
+		}
+		catch(IOException e)
+		{
+			System.err.println("Unable to checkpoint the crawl: " + e.getMessage());
+		}
+		finally
+		{
+			index.addIndexes(recent);
+			recent = new ThreadSafeInvertedIndex();
+			checkpointLock.unlockReadWrite();
+		}
+	}
+	
+	/**
+	 * Marks a page as seen
+	 * 
+	 * @param url - the page
+	 * @return - true if the page had not been seen before
+	 */
+	private boolean visit(String url)
+	{
+		if(store == null)
+		{
+			return links.add(url);
+		}
+		
+		try
+		{
+			return store.add(url);
+		}
+		catch(IOException e)
+		{
+			System.err.println("Unable to add to the crawl store: " + e.getMessage());
+			return false;
+		}
+	}
+	
+	/**
+	 * @return - the number of pages seen
+	 */
+	private int visited()
+	{
+		return store == null ? links.size() : store.size();
+	}
+	
+	/**
+	 * Schedules a page to be crawled once its host allows it
+	 * 
+	 * @param url - the page to crawl
+	 */
+	private void submit(URL url)
+	{
+		outstanding.incrementAndGet();
+		frontier.add(url);
+	}
+	
+	/**
+	 * Starts crawling a page, either entirely on the work queue or by fetching
+	 * it first
+	 * 
+	 * @param url - the page to crawl
+	 */
+	private void start(URL url)
+	{
+		start(url, url, REDIRECTS);
+	}
+	
+	/**
+	 * Starts crawling a page, or the page a redirect from it leads to
+	 * 
+	 * @param page - the page being crawled, which the html is indexed under
+	 * @param url - the address to fetch for it, which differs after a redirect
+	 * @param redirects - the number of times to follow a redirect response
+	 */
+	private void start(URL page, URL url, int redirects)
+	{
+		if(nio != null)
+		{
+			fetchAsync(page, url, redirects);
+			return;
+		}
+		
+		if(fetchers == null)
+		{
+			queue.execute(new CrawlWorker(page, url, redirects));
+			return;
+		}
+		
+		fetchers.execute(new FetchWorker(page, url, redirects));
+	}
+	
+	/**
+	 * Schedules the page a redirect leads to, so it waits on its own host like
+	 * any other page. It is counted as scheduled on its own, so the fetch that
+	 * was redirected finishes as usual.
+	 * 
+	 * @param page - the page being crawled, which the html is indexed under
+	 * @param url - the address that was redirected
+	 * @param location - where the redirect leads, which may be relative to the address
+	 * @param redirects - the number of times left to follow a redirect response
+	 * @throws MalformedURLException if the location is not a valid url
+	 */
+	private void redirect(URL page, URL url, String location, int redirects) throws MalformedURLException
+	{
+		URL target = new URL(url, location);
+		outstanding.incrementAndGet();
+		frontier.add(target, next -> start(page, next, redirects));
+	}
+	
+	/**
+	 * Fetches a page without blocking a thread and crawls it on the work
+	 * queue. Everything after the fetch runs on the work queue rather than on
+	 * the selector thread, including starting fetches the frontier lets go.
+	 * 
+	 * @param page - the page being crawled, which the html is indexed under
+	 * @param url - the address fetched for it, which differs after a redirect
+	 * @param redirects - the number of times to follow a redirect response
+	 */
+	private void fetchAsync(URL page, URL url, int redirects)
+	{
+		long started = System.nanoTime();
+		
+		nio.fetch(url).whenComplete((response, error) -> queue.execute(() -> 
+		{
+			int status = error == null ? response.getStatusCode() : -1;
+			frontier.finished(url, System.nanoTime() - started, isSuccess(status));
 			
-			if(html == null)
+			if(error != null)
 			{
+				System.err.println("There was an issue with " + url + ": " + error.getMessage());
+				finishFetch();
 				return;
 			}
 			
-			lock.lockReadWrite();
-			try
+			try(response)
 			{
-				ArrayList<URL> linksList = LinkParser.listLinks(url, html);
+				String location = response.getHeader("Location");
+				
+				if(location != null && redirects > 0)
+				{
+					redirect(page, url, location, redirects - 1);
+					return;
+				}
+				
+				String html = HTMLFetcher.toHTML(response, HTMLFetcher.MAX_BODY);
 				
-				for(URL link : linksList)
+				if(html != null)
 				{
-					if(!links.contains(link.toString()))
-					{
-						if(links.size() >= LIMIT)
-						{
-							break;
-						}
-						
-						links.add(link.toString());
-						queue.execute(new CrawlWorker(link));
-					}
+					process(page, html);
 				}
 			}
-			
+			catch(IOException e)
+			{
+				System.err.println("There was an issue with " + url + ": " + e.getMessage());
+			}
 			finally
 			{
-				lock.unlockReadWrite();
+				finishFetch();
 			}
+		}));
+	}
+	
+	/**
+	 * @param status - the status code of a response, or -1 if there was none
+	 * @return - whether the host answered the way a host that is keeping up would
+	 */
+	private static boolean isSuccess(int status)
+	{
+		return status > 0 && status < 500 && status != 429;
+	}
+	
+	/**
+	 * Waits until every page scheduled has been crawled. The parsing can
+	 * schedule more pages, and pages held back by their host are not on the
+	 * work queue yet, so this has to be done before waiting on the work queue.
+	 */
+	private void awaitFetches()
+	{
+		try
+		{
+			synchronized(outstanding)
+			{
+				while(outstanding.get() > 0)
+				{
+					outstanding.wait();
+				}
+			}
+		}
+		catch(InterruptedException e)
+		{
+			System.err.println("Encountered an error when waiting for fetches: " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * Marks a scheduled page as done
+	 */
+	private void finishFetch()
+	{
+		if(outstanding.decrementAndGet() <= 0)
+		{
+			synchronized(outstanding)
+			{
+				outstanding.notifyAll();
+			}
+		}
+	}
+	
+	/**
+	 * Fetches a page, returning null and reporting the problem if it cannot.
+	 * A redirect is scheduled with the frontier instead of being followed
+	 * here, and null is returned for it. How long the fetch took is reported
+	 * to the frontier.
+	 * 
+	 * @param page - the page being crawled
+	 * @param url - the address to fetch for it, which differs after a redirect
+	 * @param redirects - the number of times to follow a redirect response
+	 * @return - the html of the page, or null
+	 */
+	private String fetch(URL page, URL url, int redirects)
+	{
+		long started = System.nanoTime();
+		int status = -1;
+		
+		try(HttpResponse response = HttpsFetcher.open(url))
+		{
+			status = response.getStatusCode();
+			String location = response.getHeader("Location");
 			
-			SnowballStemmer stemmer = new SnowballStemmer(ALGORITHM.ENGLISH);
-			String cleaned = HTMLCleaner.stripHTML(html);
-			String[] words = IndexBuilder.textCleaner(cleaned);
-			
-			lock.lockReadWrite();
-			InvertedIndex local = new InvertedIndex();
-			int occurence = 1;
+			if(location != null && redirects > 0)
+			{
+				redirect(page, url, location, redirects - 1);
+				return null;
+			}
 			
+			return HTMLFetcher.toHTML(response, HTMLFetcher.MAX_BODY);
+		} 
+		catch (IOException e) 
+		{	
+			System.err.println("There was an issue with " + url + ": " + e.getMessage());
+			return null;
+		}
+		finally
+		{
+			frontier.finished(url, System.nanoTime() - started, isSuccess(status));
+		}
+	}
+	
+	/**
+	 * Indexes a fetched page and schedules the pages it links to
+	 * 
+	 * @param url - the page
+	 * @param html - the html of the page
+	 */
+	private void process(URL url, String html)
+	{
+		// the local index belongs to this worker alone, so it is built without the lock
+		InvertedIndex local = new InvertedIndex();
+		String location = url.toString();
+		Tokenizer tokenizer = new Tokenizer((word, position) -> local.add(WordStemmer.stem(word.toString()), location, position));
+		ArrayList<URL> linksList = HTMLScanner.extract(url, html, tokenizer, MAX_LINKS);
+		tokenizer.finish();
+		
+		lock.lockReadWrite();
+		try
+		{
+			for(URL link : linksList)
+			{
+				if(visited() >= LIMIT)
+				{
+					break;
+				}
+				
+				if(visit(link.toString()))
+				{
+					submit(link);
+				}
+			}
+		}
+		
+		finally
+		{
+			lock.unlockReadWrite();
+		}
+		
+		int indexed = 0;
+		
+		checkpointLock.lockReadOnly();
+		try
+		{
+			if(store == null)
+			{
+				index.addIndexes(local);
+			}
+			else
+			{
+				recent.addIndexes(local);
+				indexed = store.done(location);
+			}
+		}
+		catch(IOException e)
+		{
+			System.err.println("Unable to add to the crawl store: " + e.getMessage());
+		}
+		finally
+		{
+			checkpointLock.unlockReadOnly();
+		}
+		
+		if(indexed > 0 && indexed % CHECKPOINT_INTERVAL == 0)
+		{
+			checkpoint();
+		}
+	}
+	
+	/**
+	 * Private class that does the work of searching through URLs,
+	 * fetching html, and building the index
+	 *
+	 */
+	private class CrawlWorker implements Runnable
+	{
+		private final URL page;
+		private final URL url;
+		private final int redirects;
+		
+		public CrawlWorker(URL page, URL url, int redirects)
+		{
+			this.page = page;
+			this.url = url;
+			this.redirects = redirects;
+		}
+		
+		@Override
+		public void run()
+		{
 			try
 			{
-				for(String word : words)
+				String html = fetch(page, url, redirects);
+				
+				if(html != null)
 				{
-					String trim = stemmer.stem(word.toLowerCase().trim()).toString();
-						
-					if(!trim.isEmpty())
-					{
-						local.add(trim, url.toString(), occurence);
-						occurence++;
-					}
+					process(page, html);
 				}
 			}
 			finally
 			{
-				lock.unlockReadWrite();
+				finishFetch();
+			}
+		}
+	}
+	
+	/**
+	 * Private class that fetches a page on its own thread, then hands it to
+	 * the work queue to be parsed
+	 *
+	 */
+	private class FetchWorker implements Runnable
+	{
+		private final URL page;
+		private final URL url;
+		private final int redirects;
+		
+		public FetchWorker(URL page, URL url, int redirects)
+		{
+			this.page = page;
+			this.url = url;
+			this.redirects = redirects;
+		}
+		
+		@Override
+		public void run()
+		{
+			try
+			{
+				connections.acquire();
+			}
+			catch(InterruptedException e)
+			{
+				System.err.println("Interrupted while waiting to fetch: " + url);
+				finishFetch();
+				return;
+			}
+			
+			String html = fetch(page, url, redirects);
+			
+			if(html == null)
+			{
+				connections.release();
+				finishFetch();
+				return;
 			}
 			
-			index.addIndexes(local);
+			// the connection is held until the page is parsed, so no more pages are fetched than can wait for a parser
+			queue.execute(() -> 
+			{
+				try
+				{
+					process(page, html);
+				}
+				finally
+				{
+					connections.release();
+					finishFetch();
+				}
+			});
 		}
 	}
 }
@@ -0,0 +1,150 @@
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import opennlp.tools.stemmer.snowball.SnowballStemmer;
+import opennlp.tools.stemmer.snowball.SnowballStemmer.ALGORITHM;
+
+/**
+ * A thread safe English stemmer shared by indexing and querying.
+ *
+ * <p>Word frequencies in natural language follow Zipf's law, so most words
+ * stemmed have been stemmed before. Stems are remembered in a bounded
+ * concurrent map from the word to its stem, and only words missing from the
+ * map reach a Snowball stemmer, of which every thread keeps its own instance
+ * because they are not thread safe.
+ *
+ * <p>The map is split by hash into segments that each keep a young and an old
+ * generation. New stems go into the young generation, and a stem found in the
+ * old one is copied back into the young one. When the young generation of a
+ * segment fills up it becomes the old one, and the previous old generation is
+ * dropped. This approximates LRU: words still in use survive the turnover,
+ * and only one segment turns over at a time, so the hit rate never collapses
+ * across every thread at once.
+ */
+public class WordStemmer {
+
+	/** The maximum number of stems remembered */
+	private static final int CAPACITY = 1 << 16;
+
+	/** The number of segments, a power of two */
+	private static final int SEGMENTS = 16;
+
+	private static final Segment[] stems = new Segment[SEGMENTS];
+
+	static
+	{
+		for(int i = 0; i < SEGMENTS; i++)
+		{
+			stems[i] = new Segment(CAPACITY / SEGMENTS / 2);
+		}
+	}
+
+	private static final ThreadLocal<SnowballStemmer> stemmers = ThreadLocal.withInitial(() -> new SnowballStemmer(ALGORITHM.ENGLISH));
+
+	private static final LongAdder hits = new LongAdder();
+	private static final LongAdder misses = new LongAdder();
+
+	/**
+	 * Returns the stem of a word
+	 *
+	 * @param word - the word to stem
+	 * @return - the stem of the word
+	 */
+	public static String stem(String word)
+	{
+		int hash = word.hashCode();
+		Segment segment = stems[(hash ^ (hash >>> 16)) & (SEGMENTS - 1)];
+		String stem = segment.get(word);
+
+		if(stem != null)
+		{
+			hits.increment();
+			return stem;
+		}
+
+		misses.increment();
+		stem = stemmers.get().stem(word).toString();
+		segment.put(word, stem);
+		return stem;
+	}
+
+	/**
+	 * Returns the number of words whose stem was already remembered
+	 *
+	 * @return - the number of cache hits
+	 */
+	public static long hits()
+	{
+		return hits.sum();
+	}
+
+	/**
+	 * Returns the number of words that had to be stemmed
+	 *
+	 * @return - the number of cache misses
+	 */
+	public static long misses()
+	{
+		return misses.sum();
+	}
+
+	/**
+	 * One part of the remembered stems, with a young and an old generation
+	 */
+	private static class Segment
+	{
+		private final int capacity;
+		private volatile ConcurrentHashMap<String, String> young;
+		private volatile ConcurrentHashMap<String, String> old;
+
+		private Segment(int capacity)
+		{
+			this.capacity = capacity;
+			this.young = new ConcurrentHashMap<>();
+			this.old = new ConcurrentHashMap<>();
+		}
+
+		/**
+		 * Looks up a stem, moving it to the young generation if it was only in the old one
+		 */
+		private String get(String word)
+		{
+			String stem = young.get(word);
+
+			if(stem == null)
+			{
+				stem = old.get(word);
+
+				if(stem != null)
+				{
+					put(word, stem);
+				}
+			}
+
+			return stem;
+		}
+
+		/**
+		 * Remembers a stem in the young generation, turning the generations over if it is full
+		 */
+		private void put(String word, String stem)
+		{
+			young.put(word, stem);
+
+			if(young.size() >= capacity)
+			{
+				turnOver();
+			}
+		}
+
+		private synchronized void turnOver()
+		{
+			// another thread may have turned the generations over already
+			if(young.size() >= capacity)
+			{
+				old = young;
+				young = new ConcurrentHashMap<>();
+			}
+		}
+	}
+}
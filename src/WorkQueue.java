@@ -1,14 +1,39 @@
- import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
 /**
  * A simple work queue implementation based on the IBM developerWorks article by
  * Brian Goetz. It is up to the user of this class to keep track of whether
  * there is any pending work remaining.
  *
+ * <p>Work requests are handed off through a lock-free queue, so neither
+ * {@link #execute(Runnable)} nor a worker taking the next request ever waits
+ * on a monitor. Workers that find the queue empty register themselves as idle
+ * and park, and each request wakes at most one of them instead of every
+ * worker in the pool.
+ *
+ * <p>A queue can be given a capacity, in which case {@link #execute(Runnable)}
+ * blocks once that many requests are waiting and resumes when the workers have
+ * worked the queue down to half of it. Requests added by the workers
+ * themselves are never blocked, since a pool full of blocked workers could
+ * never drain the queue.
+ *
+ * <p>Every queue keeps counters, histograms of how long requests waited and
+ * ran, and the time each worker spent busy, which {@link #metrics()} copies
+ * into a {@link WorkQueueMetrics}. The most recently started queues can be
+ * reported on after they are shut down through {@link #recentMetrics()}.
+ *
  * @see <a href="http://www.ibm.com/developerworks/library/j-jtp0730/index.html">Java
  *      Theory and Practice: Thread Pools and Work Queues</a>
  */
 public class WorkQueue {
-	
+
 	/**
 	 * Pool of worker threads that will wait in the background until work is
 	 * available.
@@ -16,7 +41,10 @@ public class WorkQueue {
 	private final PoolWorker[] workers;
 
 	/** Queue of pending work requests. */
-	private final LinkedList<Runnable> queue;
+	private final ConcurrentLinkedQueue<Request> queue;
+
+	/** Workers that found no work and may be parked, possibly listed more than once. */
+	private final ConcurrentLinkedQueue<PoolWorker> idle;
 
 	/** Used to signal the queue should be shutdown. */
 	private volatile boolean shutdown;
@@ -24,7 +52,41 @@ public class WorkQueue {
 	/** The default number of threads to use when not specified. */
 	public static final int DEFAULT = 5;
 
-	private int pending;
+	/** The number of waiting requests per worker thread suggested for a bounded queue. */
+	public static final int BACKLOG = 256;
+
+	/** The number of queues remembered for {@link #recentMetrics()}. */
+	private static final int RECENT = 16;
+
+	/** The most recently started queues, newest last. */
+	private static final ConcurrentLinkedDeque<WorkQueue> recent = new ConcurrentLinkedDeque<>();
+
+	/** The name of the queue, used in reports and for its worker threads. */
+	private final String name;
+
+	/** When the queue was started, in nanoseconds. */
+	private final long started;
+
+	private final LongAdder submitted;
+	private final LongAdder completed;
+	private final LongAdder failed;
+	private final LongAdder blocks;
+	private final LongAdder blockedNanos;
+	private final LatencyHistogram waits;
+	private final LatencyHistogram runs;
+
+	private final AtomicLong pending;
+
+	/** The number of waiting requests above which producers block. */
+	private final int capacity;
+
+	/** The number of requests waiting in the queue, and the most there ever were. */
+	private final AtomicInteger depth;
+	private final AtomicInteger peak;
+
+	/** The number of producers blocked until there is space, and the monitor they wait on. */
+	private final AtomicInteger blocked;
+	private final Object space;
 
 	/**
 	 * Starts a work queue with the default number of threads.
@@ -41,44 +103,163 @@ public class WorkQueue {
 	 * @param threads number of worker threads; should be greater than 1
 	 */
 	public WorkQueue(int threads) {
-		this.queue = new LinkedList<Runnable>();
+		this(threads, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Starts a work queue with the specified number of threads that holds at
+	 * most the specified number of waiting requests from outside the pool.
+	 *
+	 * @param threads number of worker threads; should be greater than 1
+	 * @param capacity number of waiting requests at which producers block
+	 */
+	public WorkQueue(int threads, int capacity) {
+		this(threads, capacity, "work");
+	}
+
+	/**
+	 * Starts a named work queue with the specified number of threads that
+	 * holds at most the specified number of waiting requests from outside the
+	 * pool.
+	 *
+	 * @param threads number of worker threads; should be greater than 1
+	 * @param capacity number of waiting requests at which producers block
+	 * @param name name of the queue in reports and of its worker threads
+	 */
+	public WorkQueue(int threads, int capacity, String name) {
+		this.name = name;
+		this.started = System.nanoTime();
+		this.submitted = new LongAdder();
+		this.completed = new LongAdder();
+		this.failed = new LongAdder();
+		this.blocks = new LongAdder();
+		this.blockedNanos = new LongAdder();
+		this.waits = new LatencyHistogram();
+		this.runs = new LatencyHistogram();
+		this.capacity = Math.max(1, capacity);
+		this.depth = new AtomicInteger();
+		this.peak = new AtomicInteger();
+		this.blocked = new AtomicInteger();
+		this.space = new Object();
+		this.queue = new ConcurrentLinkedQueue<Request>();
+		this.idle = new ConcurrentLinkedQueue<PoolWorker>();
 		this.workers = new PoolWorker[threads];
-		this.pending = 0;
+		this.pending = new AtomicLong();
 		this.shutdown = false;
 
 		// start the threads so they are waiting in the background
 		for (int i = 0; i < threads; i++) {
 			this.workers[i] = new PoolWorker();
+			this.workers[i].setName(name + "-" + i);
 			this.workers[i].start();
 		}
+
+		recent.addLast(this);
+
+		while (recent.size() > RECENT) {
+			recent.pollFirst();
+		}
 	}
 
 	/**
 	 * Adds a work request to the queue. A thread will process this request when
-	 * available.
+	 * available. If the queue is full, waits for it to be worked down first,
+	 * unless called from one of the workers of this queue.
 	 *
 	 * @param r work request (in the form of a {@link Runnable} object)
 	 */
 	public void execute(Runnable r) {
-		
-		increment();
-		synchronized (queue) {
-			queue.addLast(r);
-			queue.notifyAll();
+
+		if (depth.get() >= capacity && !isWorker()) {
+			awaitSpace();
 		}
+
+		pending.incrementAndGet();
+		submitted.increment();
+		int waiting = depth.incrementAndGet();
+		queue.offer(new Request(r));
+
+		if (waiting > peak.get()) {
+			peak.accumulateAndGet(waiting, Math::max);
+		}
+
+		wakeOne();
 	}
 
-	
+	/**
+	 * Blocks until the workers have taken enough requests off a full queue
+	 */
+	private void awaitSpace()
+	{
+		blocked.incrementAndGet();
+		blocks.increment();
+		long start = System.nanoTime();
+
+		try
+		{
+			synchronized (space)
+			{
+				while(depth.get() > capacity / 2 && !shutdown)
+				{
+					space.wait();
+				}
+			}
+		}
+		catch(InterruptedException e)
+		{
+			System.err.println("Encountered an error when waiting for space: " + e.getMessage());
+			Thread.currentThread().interrupt();
+		}
+		finally
+		{
+			blocked.decrementAndGet();
+			blockedNanos.add(System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Takes the next request off the queue, letting blocked producers continue
+	 * once the queue is down to half of its capacity
+	 *
+	 * @return the next request, or null if the queue is empty
+	 */
+	private Request take()
+	{
+		Request r = queue.poll();
+
+		if(r != null && depth.decrementAndGet() <= capacity / 2 && blocked.get() > 0)
+		{
+			synchronized (space)
+			{
+				space.notifyAll();
+			}
+		}
+
+		return r;
+	}
+
+	/**
+	 * Checks whether the current thread is one of the workers of this queue
+	 *
+	 * @return true if called from inside a request run by this queue
+	 */
+	private boolean isWorker()
+	{
+		Thread thread = Thread.currentThread();
+		return thread instanceof PoolWorker && ((PoolWorker) thread).owner() == this;
+	}
+
+
 	/**
 	 * Waits for all pending work to be finished.
 	 */
 	public void finish() {
-		
+
 		try
 		{
-			synchronized (this) 
+			synchronized (this)
 			{
-				while(pending > 0)
+				while(pending.get() > 0)
 				{
 					this.wait();
 				}
@@ -89,35 +270,109 @@ public class WorkQueue {
 			System.err.println("Encountered an error when joining: " + e.getMessage());
 		}
 	}
-	
+
 	/**
-	 * Increments the pending variable to signify we have work to do
+	 * Decrements pending variable to signify work has been completed
 	 */
-	private void increment()
+	private void decrement()
 	{
-		synchronized (this) 
+		if(pending.decrementAndGet() <= 0)
 		{
-			pending++;
+			synchronized (this)
+			{
+				this.notifyAll();
+			}
 		}
-		
 	}
-	
+
 	/**
-	 * Decrements pending variable to signify work has been completed
+	 * Wakes a single parked worker, if there is one
 	 */
-	private void decrement()
+	private void wakeOne()
 	{
-		synchronized (this) 
+		PoolWorker worker;
+
+		while((worker = idle.poll()) != null)
 		{
-			pending--;
-			
-			if(pending <= 0)
+			// entries left behind by workers that found work before parking are skipped
+			if(worker.parked.compareAndSet(true, false))
 			{
-				this.notifyAll();
+				LockSupport.unpark(worker);
+				return;
 			}
 		}
 	}
 
+	/**
+	 * Returns the number of requests waiting to be taken by a worker.
+	 *
+	 * @return the current depth of the queue
+	 */
+	public int depth() {
+		return depth.get();
+	}
+
+	/**
+	 * Returns the largest number of requests that were ever waiting at once.
+	 *
+	 * @return the peak depth of the queue
+	 */
+	public int peakDepth() {
+		return peak.get();
+	}
+
+	/**
+	 * Returns the number of waiting requests at which producers block.
+	 *
+	 * @return the capacity, or {@link Integer#MAX_VALUE} if the queue is unbounded
+	 */
+	public int capacity() {
+		return capacity;
+	}
+
+	/**
+	 * Returns the name of the queue.
+	 *
+	 * @return the name given when the queue was started
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Copies the metrics of the queue as they are now.
+	 *
+	 * @return a snapshot of the activity of the queue
+	 */
+	public WorkQueueMetrics metrics() {
+		long[] busy = new long[workers.length];
+		long[] tasks = new long[workers.length];
+
+		for (int i = 0; i < workers.length; i++) {
+			busy[i] = workers[i].busy;
+			tasks[i] = workers[i].tasks;
+		}
+
+		return new WorkQueueMetrics(name, capacity, System.nanoTime() - started, submitted.sum(), completed.sum(),
+				failed.sum(), depth.get(), peak.get(), blocks.sum(), blockedNanos.sum(), waits.copy(), runs.copy(), busy, tasks);
+	}
+
+	/**
+	 * Copies the metrics of the most recently started queues, including the
+	 * ones already shut down.
+	 *
+	 * @return the snapshots, oldest queue first
+	 */
+	public static ArrayList<WorkQueueMetrics> recentMetrics() {
+		ArrayList<WorkQueueMetrics> metrics = new ArrayList<>();
+
+		for (WorkQueue queue : recent) {
+			metrics.add(queue.metrics());
+		}
+
+		return metrics;
+	}
+
 	/**
 	 * Asks the queue to shutdown. Any unprocessed work will not be finished,
 	 * but threads in-progress will not be interrupted.
@@ -126,8 +381,13 @@ public class WorkQueue {
 		// safe to do unsynchronized due to volatile keyword
 		shutdown = true;
 
-		synchronized (this.queue) {
-			queue.notifyAll();
+		for (PoolWorker worker : workers) {
+			worker.parked.set(false);
+			LockSupport.unpark(worker);
+		}
+
+		synchronized (space) {
+			space.notifyAll();
 		}
 	}
 
@@ -139,8 +399,8 @@ public class WorkQueue {
 	public int size() {
 		return workers.length;
 	}
-	
-	
+
+
 
 	/**
 	 * Waits until work is available in the work queue. When work is found, will
@@ -150,45 +410,89 @@ public class WorkQueue {
 	 */
 	private class PoolWorker extends Thread {
 
+		/** Set while the worker is waiting to be woken by a new request. */
+		private final AtomicBoolean parked = new AtomicBoolean();
+
+		/** The nanoseconds spent running requests and how many were run, only written by this worker. */
+		private volatile long busy;
+		private volatile long tasks;
+
+		/**
+		 * Returns the queue this worker takes requests from.
+		 *
+		 * @return the work queue
+		 */
+		private WorkQueue owner() {
+			return WorkQueue.this;
+		}
+
 		@Override
 		public void run() {
-			Runnable r = null;
+			Request r = null;
 
-			while (true) {
-				synchronized (queue) {
-					while (queue.isEmpty() && !shutdown) {
-						try {
-							queue.wait();
-						}
-						catch (InterruptedException ex) {
-							System.err.println("Warning: Work queue interrupted.");
-							Thread.currentThread().interrupt();
-						}
-					}
+			while (!shutdown) {
+				r = take();
 
-					// exit while for one of two reasons:
-					// (a) queue has work, or (b) shutdown has been called
+				if (r == null) {
+					// announce first and check again, so a request added in
+					// between either is seen here or finds this worker idle
+					parked.set(true);
+					idle.offer(this);
+					r = take();
 
-					if (shutdown) {
-						break;
+					if (r == null) {
+						while (parked.get() && !shutdown) {
+							LockSupport.park(this);
+
+							if (Thread.interrupted()) {
+								System.err.println("Warning: Work queue interrupted.");
+							}
+						}
+
+						continue;
 					}
-					else {
-						r = queue.removeFirst();
+
+					if (!parked.compareAndSet(true, false)) {
+						// a request meant to wake this worker already claimed it, so pass the wake up on
+						wakeOne();
 					}
 				}
-				
+
+				long start = System.nanoTime();
+				waits.record(start - r.queued);
+
 				try {
-					r.run();
+					r.task.run();
+					completed.increment();
 				}
 				catch (RuntimeException ex) {
 					// catch runtime exceptions to avoid leaking threads
-					System.err.println("Warning: Work queue encountered an exception while running.");
+					failed.increment();
+					System.err.println("Warning: Work queue " + name + " encountered an exception while running: " + ex);
 				}
 				finally
 				{
+					long ran = System.nanoTime() - start;
+					runs.record(ran);
+					busy += ran;
+					tasks++;
 					decrement();
 				}
 			}
 		}
 	}
-}
\ No newline at end of file
+
+	/**
+	 * A work request along with the time it was added to the queue
+	 */
+	private static class Request {
+
+		private final Runnable task;
+		private final long queued;
+
+		public Request(Runnable task) {
+			this.task = task;
+			this.queued = System.nanoTime();
+		}
+	}
+}
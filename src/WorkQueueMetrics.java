@@ -0,0 +1,236 @@
+import java.util.Arrays;
+
+/**
+ * A snapshot of the activity of a {@link WorkQueue}: how many requests it has
+ * seen, how deep it got, how long requests waited to be picked up and how long
+ * they ran, and how busy each worker was. The values are taken one after the
+ * other while the queue keeps running, so they are only consistent with each
+ * other once the queue is finished.
+ */
+public class WorkQueueMetrics {
+
+	private final String name;
+	private final int capacity;
+	private final long elapsed;
+	private final long submitted;
+	private final long completed;
+	private final long failed;
+	private final int depth;
+	private final int peakDepth;
+	private final long blocks;
+	private final long blocked;
+	private final LatencyHistogram waits;
+	private final LatencyHistogram runs;
+	private final long[] busy;
+	private final long[] tasks;
+
+	/**
+	 * Initializes a snapshot
+	 *
+	 * @param name - the name of the queue
+	 * @param capacity - the number of waiting requests at which producers block
+	 * @param elapsed - the nanoseconds since the queue was started
+	 * @param submitted - the number of requests added
+	 * @param completed - the number of requests that ran without throwing
+	 * @param failed - the number of requests that threw an exception
+	 * @param depth - the number of requests waiting
+	 * @param peakDepth - the most requests that were ever waiting at once
+	 * @param blocks - the number of times a producer blocked on a full queue
+	 * @param blocked - the nanoseconds producers spent blocked
+	 * @param waits - how long requests waited before a worker took them
+	 * @param runs - how long requests ran
+	 * @param busy - the nanoseconds each worker spent running requests
+	 * @param tasks - the number of requests each worker ran
+	 */
+	public WorkQueueMetrics(String name, int capacity, long elapsed, long submitted, long completed, long failed, int depth,
+			int peakDepth, long blocks, long blocked, LatencyHistogram waits, LatencyHistogram runs, long[] busy, long[] tasks)
+	{
+		this.name = name;
+		this.capacity = capacity;
+		this.elapsed = elapsed;
+		this.submitted = submitted;
+		this.completed = completed;
+		this.failed = failed;
+		this.depth = depth;
+		this.peakDepth = peakDepth;
+		this.blocks = blocks;
+		this.blocked = blocked;
+		this.waits = waits;
+		this.runs = runs;
+		this.busy = busy;
+		this.tasks = tasks;
+	}
+
+	/**
+	 * @return - the name of the queue
+	 */
+	public String getName()
+	{
+		return name;
+	}
+
+	/**
+	 * @return - the number of worker threads
+	 */
+	public int getThreads()
+	{
+		return busy.length;
+	}
+
+	/**
+	 * @return - the number of waiting requests at which producers block
+	 */
+	public int getCapacity()
+	{
+		return capacity;
+	}
+
+	/**
+	 * @return - the nanoseconds since the queue was started
+	 */
+	public long getElapsed()
+	{
+		return elapsed;
+	}
+
+	/**
+	 * @return - the number of requests added
+	 */
+	public long getSubmitted()
+	{
+		return submitted;
+	}
+
+	/**
+	 * @return - the number of requests that ran without throwing
+	 */
+	public long getCompleted()
+	{
+		return completed;
+	}
+
+	/**
+	 * @return - the number of requests that threw an exception
+	 */
+	public long getFailed()
+	{
+		return failed;
+	}
+
+	/**
+	 * @return - the number of requests waiting
+	 */
+	public int getDepth()
+	{
+		return depth;
+	}
+
+	/**
+	 * @return - the most requests that were ever waiting at once
+	 */
+	public int getPeakDepth()
+	{
+		return peakDepth;
+	}
+
+	/**
+	 * @return - the number of times a producer blocked on a full queue
+	 */
+	public long getBlocks()
+	{
+		return blocks;
+	}
+
+	/**
+	 * @return - the nanoseconds producers spent blocked on a full queue
+	 */
+	public long getBlocked()
+	{
+		return blocked;
+	}
+
+	/**
+	 * @return - how long requests waited before a worker took them
+	 */
+	public LatencyHistogram getWaits()
+	{
+		return waits;
+	}
+
+	/**
+	 * @return - how long requests ran
+	 */
+	public LatencyHistogram getRuns()
+	{
+		return runs;
+	}
+
+	/**
+	 * @return - the nanoseconds each worker spent running requests
+	 */
+	public long[] getBusy()
+	{
+		return Arrays.copyOf(busy, busy.length);
+	}
+
+	/**
+	 * @return - the number of requests each worker ran
+	 */
+	public long[] getTasks()
+	{
+		return Arrays.copyOf(tasks, tasks.length);
+	}
+
+	/**
+	 * Returns the share of the time since the queue was started that a worker
+	 * spent running requests
+	 *
+	 * @param worker - the index of the worker
+	 * @return - the utilization, between 0 and 1
+	 */
+	public double getUtilization(int worker)
+	{
+		return elapsed == 0 ? 0 : Math.min(1, (double) busy[worker] / elapsed);
+	}
+
+	/**
+	 * Returns the share of the time since the queue was started that the
+	 * workers spent running requests, averaged over every worker
+	 *
+	 * @return - the utilization, between 0 and 1
+	 */
+	public double getUtilization()
+	{
+		double sum = 0;
+
+		for(int i = 0; i < busy.length; i++)
+		{
+			sum += getUtilization(i);
+		}
+
+		return busy.length == 0 ? 0 : sum / busy.length;
+	}
+
+	@Override
+	public String toString()
+	{
+		StringBuilder builder = new StringBuilder();
+
+		builder.append(String.format("%s: %d threads, %s capacity, up %s%n", name, busy.length,
+				capacity == Integer.MAX_VALUE ? "unbounded" : Integer.toString(capacity), LatencyHistogram.format(elapsed)));
+		builder.append(String.format("  requests: %d submitted, %d completed, %d failed%n", submitted, completed, failed));
+		builder.append(String.format("  depth: %d now, %d peak, producers blocked %d times for %s%n", depth, peakDepth, blocks,
+				LatencyHistogram.format(blocked)));
+		builder.append(String.format("  wait: %s%n", waits));
+		builder.append(String.format("  run: %s%n", runs));
+		builder.append(String.format("  utilization: %.1f%%", getUtilization() * 100));
+
+		for(int i = 0; i < busy.length; i++)
+		{
+			builder.append(String.format("%n    worker %d: %d requests, busy %s (%.1f%%)", i, tasks[i],
+					LatencyHistogram.format(busy[i]), getUtilization(i) * 100));
+		}
+
+		return builder.toString();
+	}
+}